@@ -1,10 +1,14 @@
 package counting.approximatecounting;
 
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
 
 /** This counter introduces an element of randomness (and therefore approximation) to save space. Here, the user passes
  * a parameter, b, which controls the update probability. This number has to be > 1 for the algorithm to not become
  * a BasicCounter. Algorithm references to be found in report.
+ *
+ * By default, no generator is stored and every random draw calls ThreadLocalRandom.current(), so each draw uses the
+ * generator of the thread making it. A seeded generator can be passed in instead for reproducible runs.
  */
 
 public class BasicApproximateCounter implements Counter {
@@ -12,15 +16,24 @@ public class BasicApproximateCounter implements Counter {
     long count = 0;
     double b;
     double updateProbability;
-    Random rand = new Random();
+
+    // The generator passed in by the user, or null to use ThreadLocalRandom.current() for every draw
+    RandomGenerator rand;
 
 
     // Algorithm 2.1: BasicApproximateCounter: Initialise(b)
     public BasicApproximateCounter(double b) {
+        this(b, null);
+    }
+
+    // This constructor lets the user choose the source of random numbers. A null generator means
+    // ThreadLocalRandom.current()
+    public BasicApproximateCounter(double b, RandomGenerator rand) {
         if (b <= 1) {
             throw new RuntimeException("Please provide a value > 1 for b");
         }
         this.b = b;
+        this.rand = rand;
         updateProbability = 1 / b;
     }
 
@@ -28,19 +41,32 @@ public class BasicApproximateCounter implements Counter {
      of the two counters being merged.
      */
     public BasicApproximateCounter(double b, long sumCount) {
-        this(b);
+        this(b, sumCount, null);
+    }
+
+    public BasicApproximateCounter(double b, long sumCount, RandomGenerator rand) {
+        this(b, rand);
         count = sumCount;
     }
 
 
     // Algorithm 2.2: BasicApproximateCounter: Update()
     public void update() {
-        double y = rand.nextDouble();
+        double y = random().nextDouble();
         if (y < updateProbability) {
             count += 1;
         }
     }
 
+    // Each of the n updates increments the count with probability 1 / b, so the number of increments is a single
+    // binomial sample
+    public void update(long n) {
+        if (n < 0) {
+            throw new RuntimeException("The number of updates must not be negative");
+        }
+        count += BinomialSampling.sample(random(), n, updateProbability);
+    }
+
     // Algorithm 2.4: BasicApproximateCounter: Merge(c1, c2)
     public BasicApproximateCounter merge(BasicApproximateCounter bac) {
 
@@ -50,7 +76,7 @@ public class BasicApproximateCounter implements Counter {
         }
 
         // Return a new counter which is instantiated with the sum of the two counters' counts.
-        return new BasicApproximateCounter(b, this.getCount() + bac.getCount());
+        return new BasicApproximateCounter(b, this.getCount() + bac.getCount(), rand);
     }
 
     // Algorithm 2.3: Query()
@@ -58,6 +84,11 @@ public class BasicApproximateCounter implements Counter {
         return Math.round(count * b);
     }
 
+    // The generator passed in by the user, or null if the counter uses ThreadLocalRandom.current()
+    public RandomGenerator getRandomGenerator() {
+        return rand;
+    }
+
     public double getB() {
         return b;
     }
@@ -66,4 +97,9 @@ public class BasicApproximateCounter implements Counter {
         return count;
     }
 
+    // The generator passed in by the user, or the calling thread's ThreadLocalRandom when none was given
+    private RandomGenerator random() {
+        return rand != null ? rand : ThreadLocalRandom.current();
+    }
+
 }
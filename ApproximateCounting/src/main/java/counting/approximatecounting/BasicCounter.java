@@ -22,6 +22,13 @@ public class BasicCounter implements Counter {
         count += 1;
     }
 
+    public void update(long n) {
+        if (n < 0) {
+            throw new RuntimeException("The number of updates must not be negative");
+        }
+        count += n;
+    }
+
     public long query() {
         return count;
     }
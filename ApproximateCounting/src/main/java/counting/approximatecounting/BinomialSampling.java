@@ -0,0 +1,92 @@
+package counting.approximatecounting;
+
+import java.util.random.RandomGenerator;
+
+/** Draws samples from the binomial distribution: the number of successes in n independent trials which each succeed
+ * with probability p. This lets a counter apply n probabilistic updates at once.
+ *
+ * Small cases are sampled directly by jumping from one success to the next with geometrically distributed gaps,
+ * which takes about n * p steps. Larger cases are split in half using a beta-distributed order statistic (Devroye,
+ * Non-Uniform Random Variate Generation, chapter X.4). Each trial is given a uniform value and succeeds if it is below
+ * p. The k-th smallest of the n uniform values has a beta(k, n + 1 - k) distribution, and lands either below p, in
+ * which case the k trials up to it all succeed and the rest are sampled again, or above p, in which case only the
+ * trials before it can succeed. Each split at least halves n, so a sample takes O(log n) steps.
+ *
+ */
+
+final class BinomialSampling {
+
+    // Below this many expected successes, successes are found one at a time
+    private static final double DIRECT_SAMPLING_LIMIT = 16;
+
+    private BinomialSampling() {
+    }
+
+    static long sample(RandomGenerator rand, long n, double p) {
+        if (n < 0 || !(p >= 0 && p <= 1)) {
+            throw new RuntimeException("n must not be negative, and p must be between 0 and 1");
+        }
+
+        long successes = 0;
+        while (n > 0 && p > 0) {
+            if (p >= 1) {
+                return successes + n;
+            }
+            if (n * Math.min(p, 1 - p) < DIRECT_SAMPLING_LIMIT) {
+                return successes + (p <= 0.5 ? sampleDirectly(rand, n, p) : n - sampleDirectly(rand, n, 1 - p));
+            }
+
+            long k = (n + 1) / 2;
+            double x = sampleBeta(rand, k, n + 1 - k);
+            if (x < p) {
+                successes += k;
+                n -= k;
+                p = (p - x) / (1 - x);
+            }
+            else {
+                n = k - 1;
+                p = p / x;
+            }
+        }
+        return successes;
+    }
+
+    // Counts successes by drawing the geometric gap to each one in turn, stopping once the gaps pass the n-th trial
+    private static long sampleDirectly(RandomGenerator rand, long n, double p) {
+        double logFailure = Math.log1p(-p);
+        long successes = 0;
+        long trial = 0;
+        while (true) {
+            trial += (long) (Math.log(1 - rand.nextDouble()) / logFailure) + 1;
+            if (trial > n || trial <= 0) {
+                return successes;
+            }
+            successes++;
+        }
+    }
+
+    // A beta(a, b) sample, from two gamma samples
+    private static double sampleBeta(RandomGenerator rand, double a, double b) {
+        double x = sampleGamma(rand, a);
+        double y = sampleGamma(rand, b);
+        return x / (x + y);
+    }
+
+    // A gamma(shape, 1) sample for shape >= 1, using Marsaglia and Tsang's method
+    private static double sampleGamma(RandomGenerator rand, double shape) {
+        double d = shape - 1.0 / 3;
+        double c = 1 / Math.sqrt(9 * d);
+        while (true) {
+            double x = rand.nextGaussian();
+            double v = 1 + c * x;
+            if (v <= 0) {
+                continue;
+            }
+            v = v * v * v;
+            double u = 1 - rand.nextDouble();
+            if (Math.log(u) < 0.5 * x * x + d - d * v + d * Math.log(v)) {
+                return d * v;
+            }
+        }
+    }
+}
@@ -6,6 +6,10 @@ package counting.approximatecounting;
 public interface Counter {
 
     void update();
+
+    // Has the same effect as n calls to update(), without having to make them one at a time
+    void update(long n);
+
     long query();
 
 }
@@ -7,6 +7,7 @@ import javafx.scene.chart.*;
 import javafx.scene.text.Font;
 import javafx.stage.Stage;
 import java.util.Arrays;
+import java.util.SplittableRandom;
 
 /** This class takes a single MorrisCounter b value and runs d simultaneous instances, where d is user-defined.
  * It then records the median and 90th percentile errors of the counters. This class creates a single chart:
@@ -27,11 +28,18 @@ public class MedianMorrisCounterError extends Application {
         // Set the value to which our counter counts to
         final long COUNT_TO_VALUE = 1000000000;
 
-        // Set the number of updates made to our counters before refreshing the graph visualisation. The smaller this is,
-        // the more detail that can be seen in the results. However, it will take the program much longer to arrive at
-        // large count values.
+        // Set the smallest number of updates made to our counters before refreshing the graph visualisation. The
+        // smaller this is, the more detail that can be seen in the results for small counts.
         final int UPDATES_PER_FRAME = 1;
 
+        // Set how quickly the number of updates per frame grows. Each frame makes UPDATES_PER_FRAME updates or this
+        // fraction of the count so far, whichever is larger, so the count grows geometrically and reaches
+        // COUNT_TO_VALUE in a few thousand frames. Each counter applies a frame's updates with a single update(n) call
+        final double FRAME_GROWTH = 0.01;
+
+        // Set the seed of the random number generator used by the counters
+        final long SEED = 42;
+
 
         // Prepare percentage error line chart
         stage.setTitle("Median and 90th percentile run " + B_VALUE);
@@ -66,9 +74,12 @@ public class MedianMorrisCounterError extends Application {
         // Calculate 90th percentile value
         int percentile90Value = (NUMBER_OF_COUNTERS / 10) * 9;
 
-        // Initialise Morris Counters
+        // Initialise Morris Counters. Skip-ahead updates give the same distribution of counts as the original update,
+        // but almost all of them avoid drawing a random number. The counters share one seeded generator, so every run
+        // gives the same results
+        SplittableRandom rand = new SplittableRandom(SEED);
         for (int i = 0; i < NUMBER_OF_COUNTERS; i++) {
-            morrisCounters[i] = new MorrisCounter(B_VALUE);
+            morrisCounters[i] = new MorrisCounter(B_VALUE, true, rand);
         }
 
         new AnimationTimer() {
@@ -85,6 +96,9 @@ public class MedianMorrisCounterError extends Application {
                 // Initialise array to store absolute errors
                 long[] morrisErrors = new long[NUMBER_OF_COUNTERS];
 
+                // The number of updates made this frame
+                long updates = Math.max(UPDATES_PER_FRAME, (long) (count * FRAME_GROWTH));
+
 
                 // Retrieve Morris Counter estimates and calculate absolute error
                 for (int i = 0; i < NUMBER_OF_COUNTERS; i++) {
@@ -100,9 +114,7 @@ public class MedianMorrisCounterError extends Application {
                     morrisErrors[i] = morrisError;
 
                     // Update Morris Counters
-                    for (int j = 0; j < UPDATES_PER_FRAME; j++) {
-                        mc.update();
-                    }
+                    mc.update(updates);
                 }
 
                 // Sort absolute errors
@@ -125,7 +137,7 @@ public class MedianMorrisCounterError extends Application {
                 percentile90Line.getData().add(new XYChart.Data<>(count, percentile90PercentageError));
 
                 // Update count
-                count += UPDATES_PER_FRAME;
+                count += updates;
 
             }
 
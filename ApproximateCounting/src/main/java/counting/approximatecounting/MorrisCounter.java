@@ -1,67 +1,177 @@
 package counting.approximatecounting;
 
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
 
 /** The MorrisCounter uses randomisation to reduce the space required to store approximations of a counter.
  * First published by Morris in 1978, it is sometimes considered to be the first non-trivial streaming algorithm.
  * Algorithm references to be found in report.
+ *
+ * At high counts almost every update leaves the count unchanged. In skip-ahead mode, the counter instead draws the
+ * number of updates that will fail before the next increment from a geometric distribution, and most updates then
+ * only have to count this number down. This gives counts with exactly the same distribution as the original update.
+ *
+ * By default, no generator is stored and every random draw calls ThreadLocalRandom.current(), so each draw uses the
+ * generator of the thread making it and nothing is created per counter. For reproducible runs, pass in a seeded
+ * generator such as a SplittableRandom instead. Such a generator is used by whichever thread updates the counter, so
+ * split() it to give each thread its own.
  */
 
 public class MorrisCounter implements Counter {
 
     long count;
     private final double b;
-    Random rand = new Random();
+
+    // The generator passed in by the user, or null to use ThreadLocalRandom.current() for every draw
+    RandomGenerator rand;
+
+    // In skip-ahead mode, the number of updates left to fail before the count is next incremented
+    private final boolean skipAhead;
+    private long skip;
 
     // Algorithm 2.1: BasicApproximateCounter: Initialise(b) - Morris Counter uses the same algorithm
     public MorrisCounter(double b) {
-        if (b <= 1) {
-            throw new RuntimeException("Please provide a value > 1 for b");
-        }
-        this.b = b;
-        count = 0;
+        this(b, false);
+    }
+
+    // This constructor lets the user choose skip-ahead updates
+    public MorrisCounter(double b, boolean skipAhead) {
+        this(b, 0, skipAhead);
     }
 
     /* This constructor is used when merging two MorrisCounters. It is instantiated with the maximum count of the two
      * counters being merged
      */
     public MorrisCounter(double b, long maxCount) {
-        this(b);
-        count = maxCount;
+        this(b, maxCount, false);
+    }
+
+    // The same as above, for a merged counter in skip-ahead mode
+    public MorrisCounter(double b, long maxCount, boolean skipAhead) {
+        this(b, maxCount, skipAhead, null);
+    }
+
+    // This constructor lets the user choose the source of random numbers. A null generator means
+    // ThreadLocalRandom.current()
+    public MorrisCounter(double b, boolean skipAhead, RandomGenerator rand) {
+        this(b, 0, skipAhead, rand);
     }
 
-    // Algorithm 2.5: MorrisCounter: Update()
+    // The same as above, starting from a given count. Merged counters use this constructor to share the random number
+    // generator of the counters they came from
+    public MorrisCounter(double b, long count, boolean skipAhead, RandomGenerator rand) {
+        if (b <= 1) {
+            throw new RuntimeException("Please provide a value > 1 for b");
+        }
+        this.b = b;
+        this.skipAhead = skipAhead;
+        this.rand = rand;
+        this.count = count;
+        if (skipAhead) {
+            skip = sampleSkip();
+        }
+    }
+
+    // Algorithm 2.5: MorrisCounter: Update(). In skip-ahead mode, the random draw is only made once the skip count has
+    // reached zero
     public void update() {
+        if (skipAhead) {
+            if (skip > 0) {
+                skip--;
+                return;
+            }
+            count++;
+            skip = sampleSkip();
+            return;
+        }
+
         // randomly generate a real number between 0 and 1 (line 1)
-        double y = rand.nextDouble();
+        double y = random().nextDouble();
         // Update y if condition met (lines 2-3)
         if (y < (Math.pow(b, -count))) {
             count++;
         }
     }
 
-    // Algorithm 2.7: MorrisCounter: Merge(c1, c2)
-    public MorrisCounter merge(MorrisCounter mc) {
-        // Check that both MorrisCounters share the same base
-        if (mc.getB() != this.b) {
-            throw new RuntimeException("Can't merge two Morris Counters with two different b values");
+    /* Applies n updates by jumping from one increment to the next. The number of failed updates before each increment
+     * is drawn as in skip-ahead mode, so only the increments themselves cost anything, and there are O(log n) of them.
+     * Failed updates leave the count alone, so without skip-ahead mode the first skip can be drawn afresh
+     */
+    public void update(long n) {
+        if (n < 0) {
+            throw new RuntimeException("The number of updates must not be negative");
+        }
+        long remaining = n;
+        long skip = skipAhead ? this.skip : sampleSkip();
+        while (remaining > skip) {
+            remaining -= skip + 1;
+            count++;
+            skip = sampleSkip();
         }
+        if (skipAhead) {
+            this.skip = skip - remaining;
+        }
+    }
 
-        long biggestCount = Math.max(this.count, mc.count);
-        long smallestCount = Math.min(this.count, mc.count);
+    // Algorithm 2.7: MorrisCounter: Merge(c1, c2). The merged count is found in closed form (see mergeAll) instead of
+    // by stepping through every level of the smaller counter, so merging takes the same time whatever the counts are
+    public MorrisCounter merge(MorrisCounter mc) {
+        return mergeAll(this, mc);
+    }
 
-        // Set up a new MorrisCounter and initialise it with the biggest count of the two counters
-        MorrisCounter mergedMorrisCounter = new MorrisCounter(this.b, biggestCount);
+    /* Merges any number of MorrisCounters sharing the same b. The merged estimate should be the sum of their
+     * estimates, which means b^count - 1 should equal the sum of b^count_i - 1. This target generally lies between two
+     * powers of b, so the merged count is rounded down or up at random, rounding up with the probability that makes
+     * the expected value of b^count equal to the target. Like Algorithm 2.7, the merged estimate is therefore unbiased,
+     * but it costs one random draw. The powers are taken relative to the largest count so that none of them overflow.
+     * The merged counter uses the first counter's mode and random number generator
+     */
+    public static MorrisCounter mergeAll(MorrisCounter... counters) {
+        if (counters.length == 0) {
+            throw new RuntimeException("Please provide at least one Morris Counter to merge");
+        }
 
-        for (long i = 0; i < smallestCount; i++) {
-            double y = rand.nextDouble();
-            if (y < Math.pow(b, i - mergedMorrisCounter.count)) {
-                mergedMorrisCounter.count++;
+        MorrisCounter first = counters[0];
+        double b = first.b;
+        int largest = 0;
+        for (int i = 0; i < counters.length; i++) {
+            // Check that all MorrisCounters share the same base
+            if (counters[i].b != b) {
+                throw new RuntimeException("Can't merge two Morris Counters with two different b values");
+            }
+            if (counters[i].count > counters[largest].count) {
+                largest = i;
+            }
+        }
+        long largestCount = counters[largest].count;
+
+        // The target divided by b^largestCount is 1 plus the sum over the other counters of (b^count_i - 1) /
+        // b^largestCount. Each of these terms is at most 1, so the merged count is at most log_b(counters.length)
+        // above the largest count
+        double excess = 0;
+        for (int i = 0; i < counters.length; i++) {
+            if (i != largest) {
+                excess += Math.max(0, Math.pow(b, counters[i].count - largestCount) - Math.pow(b, -largestCount));
             }
         }
 
-        return mergedMorrisCounter;
+        long mergedCount = mergedCount(b, largestCount, excess, first.random());
+        return new MorrisCounter(b, mergedCount, first.skipAhead, first.rand);
+    }
 
+    // Returns the count c for which b^c = b^largestCount * (1 + excess), rounded down or up at random so that the
+    // expected value of b^c is exactly this target. Also used by MorrisCounterArray
+    static long mergedCount(double b, long largestCount, double excess, RandomGenerator rand) {
+        double logB = Math.log1p(b - 1);
+        double exponent = Math.log1p(excess) / logB;
+        long wholeExponent = (long) exponent;
+        double roundUpProbability = Math.expm1((exponent - wholeExponent) * logB) / (b - 1);
+
+        long mergedCount = largestCount + wholeExponent;
+        if (rand.nextDouble() < roundUpProbability) {
+            mergedCount++;
+        }
+        return mergedCount;
     }
 
     // Algorithm 2.6: MorrisCounter: Query()
@@ -70,6 +180,30 @@ public class MorrisCounter implements Counter {
     }
 
 
+    /* Draws the number of updates that fail before the next increment. Each update increments the count with
+     * probability p = b^-count, so this is geometrically distributed, and floor(ln(u) / ln(1 - p)) for a uniform u in
+     * (0, 1] has exactly this distribution. When the count is 0, p = 1 and no updates are skipped
+     */
+    private long sampleSkip() {
+        double u = 1 - random().nextDouble();
+        return (long) (Math.log(u) / Math.log1p(-Math.pow(b, -count)));
+    }
+
+    // The generator passed in by the user, or the calling thread's ThreadLocalRandom when none was given. The
+    // ThreadLocalRandom is looked up at every draw rather than stored, as it must only be used by its own thread
+    private RandomGenerator random() {
+        return rand != null ? rand : ThreadLocalRandom.current();
+    }
+
+    // The generator passed in by the user, or null if the counter uses ThreadLocalRandom.current()
+    public RandomGenerator getRandomGenerator() {
+        return rand;
+    }
+
+    public boolean isSkipAhead() {
+        return skipAhead;
+    }
+
     public long getCount() {
         return count;
     }
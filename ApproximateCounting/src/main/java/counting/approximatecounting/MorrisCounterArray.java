@@ -0,0 +1,191 @@
+package counting.approximatecounting;
+
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
+
+/** A fixed number of Morris Counters stored as packed exponents in one byte array, for keeping an approximate count
+ * per key over many keys. Each MorrisCounter object carries its own b, random number generator and object header,
+ * whereas here every counter shares the same b and random number generator, and costs one byte (or half a byte with
+ * 4-bit exponents). As with MorrisCounter, every random draw calls ThreadLocalRandom.current() unless a generator is
+ * given.
+ *
+ * The update probabilities, estimates and skip distributions of every exponent are computed once, when the array is
+ * created, so updates never call Math.pow. An exponent that reaches the largest value its width can hold stops
+ * increasing. With 8-bit exponents this happens at an estimate of (b^255 - 1) / (b - 1), e.g. about 4 x 10^9 for
+ * b = 1.08, and with 4-bit exponents at (b^15 - 1) / (b - 1).
+ *
+ */
+
+public class MorrisCounterArray {
+
+    // The number of bits used to store each exponent
+    public enum ExponentWidth {
+        FOUR_BITS(4),
+        EIGHT_BITS(8);
+
+        private final int bits;
+
+        ExponentWidth(int bits) {
+            this.bits = bits;
+        }
+
+        public int getBits() {
+            return bits;
+        }
+    }
+
+    private final int size;
+    private final double b;
+    private final ExponentWidth exponentWidth;
+
+    // The generator passed in by the user, or null to use ThreadLocalRandom.current() for every draw
+    private final RandomGenerator rand;
+
+    // Exponent i is stored in byte i >>> indexShift, starting at bit (i & offsetMask) * 4
+    private final byte[] exponents;
+    private final int indexShift;
+    private final int offsetMask;
+    private final int maxExponent;
+
+    // For each exponent c: the update probability b^-c, ln(1 - b^-c) (used to draw the number of updates skipped
+    // before the next increment, as in MorrisCounter), and the estimate (b^c - 1) / (b - 1)
+    private final double[] updateProbabilities;
+    private final double[] logFailureProbabilities;
+    private final long[] estimates;
+
+    // Basic constructor, with 8-bit exponents
+    public MorrisCounterArray(int size, double b) {
+        this(size, b, ExponentWidth.EIGHT_BITS);
+    }
+
+    public MorrisCounterArray(int size, double b, ExponentWidth exponentWidth) {
+        this(size, b, exponentWidth, null);
+    }
+
+    // This constructor lets the user choose the source of random numbers, e.g. a seeded SplittableRandom. A null
+    // generator means ThreadLocalRandom.current()
+    public MorrisCounterArray(int size, double b, ExponentWidth exponentWidth, RandomGenerator rand) {
+        if (b <= 1) {
+            throw new RuntimeException("Please provide a value > 1 for b");
+        }
+        if (size < 0) {
+            throw new RuntimeException("The number of counters must not be negative");
+        }
+        this.size = size;
+        this.b = b;
+        this.exponentWidth = exponentWidth;
+        this.rand = rand;
+
+        indexShift = exponentWidth == ExponentWidth.FOUR_BITS ? 1 : 0;
+        offsetMask = indexShift;
+        exponents = new byte[(int) (((long) size + offsetMask) >>> indexShift)];
+        maxExponent = (1 << exponentWidth.getBits()) - 1;
+
+        updateProbabilities = new double[maxExponent + 1];
+        logFailureProbabilities = new double[maxExponent + 1];
+        estimates = new long[maxExponent + 1];
+        for (int c = 0; c <= maxExponent; c++) {
+            updateProbabilities[c] = Math.pow(b, -c);
+            logFailureProbabilities[c] = Math.log1p(-updateProbabilities[c]);
+            estimates[c] = Math.round((Math.pow(b, c) - 1) / (b - 1));
+        }
+    }
+
+    // Algorithm 2.5: MorrisCounter: Update(), for the counter at index
+    public void update(int index) {
+        int exponent = getExponent(index);
+        if (exponent < maxExponent && random().nextDouble() < updateProbabilities[exponent]) {
+            setExponent(index, exponent + 1);
+        }
+    }
+
+    // Applies n updates to the counter at index, jumping from one increment to the next as in MorrisCounter.update(n)
+    public void update(int index, long n) {
+        if (n < 0) {
+            throw new RuntimeException("The number of updates must not be negative");
+        }
+        RandomGenerator rand = random();
+        int exponent = getExponent(index);
+        long remaining = n;
+        while (exponent < maxExponent) {
+            long skip = (long) (Math.log(1 - rand.nextDouble()) / logFailureProbabilities[exponent]);
+            if (skip >= remaining) {
+                break;
+            }
+            remaining -= skip + 1;
+            exponent++;
+        }
+        setExponent(index, exponent);
+    }
+
+    // Algorithm 2.6: MorrisCounter: Query(), for the counter at index
+    public long query(int index) {
+        return estimates[getExponent(index)];
+    }
+
+    // Merges the counters at each index, in closed form as in MorrisCounter.mergeAll. The arrays must have the same
+    // size, b and exponent width. The merged array shares this array's random number generator
+    public MorrisCounterArray merge(MorrisCounterArray mca) {
+        if (mca.size != size || mca.b != b || mca.exponentWidth != exponentWidth) {
+            throw new RuntimeException(
+                    "Can't merge two Morris Counter arrays with different sizes, b values or exponent widths");
+        }
+
+        MorrisCounterArray merged = new MorrisCounterArray(size, b, exponentWidth, rand);
+        RandomGenerator rand = random();
+        for (int i = 0; i < size; i++) {
+            int largest = Math.max(getExponent(i), mca.getExponent(i));
+            int smallest = Math.min(getExponent(i), mca.getExponent(i));
+            if (smallest == 0) {
+                merged.setExponent(i, largest);
+                continue;
+            }
+
+            // (b^smallest - 1) / b^largest
+            double excess = Math.max(0, updateProbabilities[largest - smallest] - updateProbabilities[largest]);
+            long mergedExponent = MorrisCounter.mergedCount(b, largest, excess, rand);
+            merged.setExponent(i, (int) Math.min(mergedExponent, maxExponent));
+        }
+        return merged;
+    }
+
+    // The exponent (the count of a MorrisCounter) stored at index
+    public int getExponent(int index) {
+        Objects.checkIndex(index, size);
+        int offset = (index & offsetMask) << 2;
+        return (exponents[index >>> indexShift] >>> offset) & maxExponent;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double getB() {
+        return b;
+    }
+
+    // The generator passed in by the user, or null if the array uses ThreadLocalRandom.current()
+    public RandomGenerator getRandomGenerator() {
+        return rand;
+    }
+
+    public ExponentWidth getExponentWidth() {
+        return exponentWidth;
+    }
+
+    public long getBytesUsed() {
+        return exponents.length;
+    }
+
+    // The generator passed in by the user, or the calling thread's ThreadLocalRandom when none was given
+    private RandomGenerator random() {
+        return rand != null ? rand : ThreadLocalRandom.current();
+    }
+
+    private void setExponent(int index, int exponent) {
+        int offset = (index & offsetMask) << 2;
+        int byteIndex = index >>> indexShift;
+        exponents[byteIndex] = (byte) ((exponents[byteIndex] & ~(maxExponent << offset)) | (exponent << offset));
+    }
+}
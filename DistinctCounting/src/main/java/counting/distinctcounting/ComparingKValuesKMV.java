@@ -107,9 +107,9 @@ public class ComparingKValuesKMV extends Application {
                 }
 
                 // Generate random numbers to add to KMVs
-                ArrayList<Long> randomNumbersToAdd = new ArrayList<>(UPDATES_PER_FRAME);
+                long[] randomNumbersToAdd = new long[UPDATES_PER_FRAME];
                 for (int i = 0; i < UPDATES_PER_FRAME; i++) {
-                    randomNumbersToAdd.add(rand.nextLong(UPPER_LIMIT_NUM_TO_ADD));
+                    randomNumbersToAdd[i] = rand.nextLong(UPPER_LIMIT_NUM_TO_ADD);
                 }
 
                 // For each k value, sum up the percentage error from its KMVs
@@ -127,9 +127,7 @@ public class ComparingKValuesKMV extends Application {
                         }
 
                         // Update each KMV with already generated random numbers
-                        for (int k = 0; k < UPDATES_PER_FRAME; k++) {
-                            kmv.update(randomNumbersToAdd.get(k));
-                        }
+                        kmv.update(randomNumbersToAdd, 0, UPDATES_PER_FRAME);
                     }
 
                     // Add percentage error to our line chart
@@ -144,7 +142,7 @@ public class ComparingKValuesKMV extends Application {
 
                 // Update our true count with the already generated random numbers
                 for (int i = 0; i < UPDATES_PER_FRAME; i++) {
-                    trueDistinctCount.update(randomNumbersToAdd.get(i));
+                    trueDistinctCount.update(randomNumbersToAdd[i]);
                 }
 
                 // Update our current distinct count
@@ -0,0 +1,184 @@
+package counting.distinctcounting;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/** A KMV which many threads can update at once. Each thread is assigned one of a number of stripes, and each stripe
+ * keeps its own k minimum hash values (in the primitive storage engine) behind its own lock. Because every thread
+ * tends to use the same stripe, the locks are almost never contended.
+ *
+ * The smallest threshold of any full stripe is published in an AtomicLong. No hash value at or above it can be among
+ * the k minimum values of the whole stream, so once the sketch has filled, nearly every update is rejected with a
+ * single volatile read and no locking. Queries merge the stripes one at a time, so a query may miss updates that are
+ * happening while it runs. Memory use grows with the number of stripes, as each stripe can hold up to k hash values.
+ *
+ */
+
+public class ConcurrentKMV {
+
+    private final int kMinimumValues;
+    private final Hash hashFunction;
+    private final Stripe[] stripes;
+    private final int stripeMask;
+
+    // The smallest threshold of any full stripe. Hash values at or above this value can't change the sketch
+    private final AtomicLong threshold = new AtomicLong(Long.MAX_VALUE);
+
+    // Algorithm 3.1: KMV: Initialise(k), with one stripe per available processor (rounded up to a power of two)
+    public ConcurrentKMV(int kMinimumValues) {
+        this(kMinimumValues, new PairwiseHash(), Runtime.getRuntime().availableProcessors());
+    }
+
+    // This constructor is used when we want to use the same hash function as another KMV, e.g. to merge their results
+    public ConcurrentKMV(int kMinimumValues, Hash hashFunction, int numberOfStripes) {
+        // The algorithm doesn't work for values less than or equal to 1
+        if (kMinimumValues <= 1) {
+            throw new RuntimeException("k has to be greater than 1");
+        }
+        if (numberOfStripes < 1) {
+            throw new RuntimeException("At least one stripe is required");
+        }
+        this.kMinimumValues = kMinimumValues;
+        this.hashFunction = hashFunction;
+
+        int stripeCount = Integer.highestOneBit(numberOfStripes);
+        if (stripeCount < numberOfStripes) {
+            stripeCount <<= 1;
+        }
+        stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe(kMinimumValues);
+        }
+        stripeMask = stripeCount - 1;
+    }
+
+    // Algorithm 3.2: KMV: Update(s)
+    public void update(long item) {
+        long hashValue = hashFunction.hashFunction(item);
+
+        // The common case once the sketch has filled: a single volatile read and no locking
+        if (hashValue >= threshold.get()) {
+            return;
+        }
+
+        Stripe stripe = currentStripe();
+        long stripeThreshold;
+        synchronized (stripe) {
+            stripeThreshold = stripe.update(hashValue);
+        }
+        publishThreshold(stripeThreshold);
+    }
+
+    // Algorithm 3.2: KMV: Update(s), applied to items[offset] to items[offset + length - 1]. The stripe is locked once
+    // for the whole batch, and only for the hash values which survive the published threshold
+    public void update(long[] items, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > items.length - length) {
+            throw new RuntimeException("The batch lies outside the bounds of the items array");
+        }
+
+        Stripe stripe = currentStripe();
+        long currentThreshold = threshold.get();
+        long stripeThreshold = Long.MAX_VALUE;
+        synchronized (stripe) {
+            for (int i = offset; i < offset + length; i++) {
+                long hashValue = hashFunction.hashFunction(items[i]);
+                if (hashValue < currentThreshold) {
+                    stripeThreshold = stripe.update(hashValue);
+                }
+            }
+        }
+        publishThreshold(stripeThreshold);
+    }
+
+    // Algorithm 3.3: KMV: Query(). Updates running at the same time may or may not be reflected in the answer
+    public long query() {
+        long[] hashValues = getSortedHashValues();
+
+        // The algorithm is deterministic and offers exact answers when fewer than k hash values have been seen
+        if (hashValues.length < kMinimumValues) {
+            return hashValues.length;
+        }
+
+        double area_on_line = (double) hashFunction.getPrime() / hashValues[kMinimumValues - 1];
+        return Math.round((kMinimumValues - 1) * area_on_line);
+    }
+
+    // Returns the (up to) k minimum distinct hash values across all stripes, in ascending order
+    public long[] getSortedHashValues() {
+        long[][] stripeHashValues = new long[stripes.length][];
+        for (int i = 0; i < stripes.length; i++) {
+            synchronized (stripes[i]) {
+                stripeHashValues[i] = stripes[i].hashValues.toSortedArray();
+            }
+        }
+
+        // Different threads may have added the same hash value to different stripes, which the merge only keeps once
+        return SortedHashValues.mergeAll(stripeHashValues, kMinimumValues);
+    }
+
+    public int getKMinimumValues() {
+        return kMinimumValues;
+    }
+
+    public Hash getHashFunction() {
+        return hashFunction;
+    }
+
+    public int getNumberOfStripes() {
+        return stripes.length;
+    }
+
+    public long getThreshold() {
+        return threshold.get();
+    }
+
+    public int getBytesUsed() {
+        return getSortedHashValues().length * 8;
+    }
+
+    private Stripe currentStripe() {
+        return stripes[(int) Thread.currentThread().getId() & stripeMask];
+    }
+
+    // Lowers the published threshold to the given stripe threshold, unless another thread has lowered it further
+    private void publishThreshold(long stripeThreshold) {
+        long current = threshold.get();
+        while (stripeThreshold < current) {
+            if (threshold.compareAndSet(current, stripeThreshold)) {
+                return;
+            }
+            current = threshold.get();
+        }
+    }
+
+    // The k minimum hash values seen by the threads assigned to one stripe. Only accessed while holding its lock
+    private static final class Stripe {
+
+        private final HeapKMinimumHashValues hashValues;
+        private final int kMinimumValues;
+        private long threshold = Long.MAX_VALUE;
+
+        private Stripe(int kMinimumValues) {
+            this.kMinimumValues = kMinimumValues;
+            hashValues = new HeapKMinimumHashValues(kMinimumValues);
+        }
+
+        // Algorithm 3.2: KMV: Update(s) for a single stripe. Returns the stripe's threshold after the update
+        private long update(long hashValue) {
+            if (hashValue >= threshold || hashValues.contains(hashValue)) {
+                return threshold;
+            }
+
+            if (hashValues.size() < kMinimumValues) {
+                hashValues.add(hashValue);
+                if (hashValues.size() == kMinimumValues) {
+                    threshold = hashValues.largest();
+                }
+            }
+            else {
+                hashValues.replaceLargest(hashValue);
+                threshold = hashValues.largest();
+            }
+            return threshold;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package counting.distinctcounting;
+
+import java.util.concurrent.CountDownLatch;
+
+/** This class measures how the update throughput of the ConcurrentKMV scales with the number of threads updating it.
+ * For each thread count from 1 up to the number of available processors, a fresh sketch is first filled, and then
+ * every thread adds the same number of items from its own stream. Results are printed to the console as updates per
+ * second, alongside the speedup over a single thread.
+ */
+
+public class ConcurrentKMVScalingBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+
+        // Set the k value of the sketches
+        final int K_VALUE = 4096;
+
+        // Set the number of items used to fill each sketch before timing starts
+        final long FILL_ITEMS = 10000000;
+
+        // Set the number of items each thread adds to the sketch while being timed
+        final long ITEMS_PER_THREAD = 50000000;
+
+        // Set the maximum number of threads to test
+        final int MAX_THREADS = Runtime.getRuntime().availableProcessors();
+
+        PairwiseHash hashFunction = new PairwiseHash();
+        double singleThreadThroughput = 0;
+
+        for (int threads = 1; threads <= MAX_THREADS; threads++) {
+            ConcurrentKMV kmv = new ConcurrentKMV(K_VALUE, hashFunction, MAX_THREADS);
+
+            // Fill the sketch so that we measure its steady state
+            long item = -1;
+            for (long i = 0; i < FILL_ITEMS; i++) {
+                item = nextItem(item);
+                kmv.update(item);
+            }
+
+            CountDownLatch start = new CountDownLatch(1);
+            CountDownLatch finished = new CountDownLatch(threads);
+            for (int t = 0; t < threads; t++) {
+                final long seed = t + 1;
+                new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    long threadItem = seed;
+                    for (long i = 0; i < ITEMS_PER_THREAD; i++) {
+                        threadItem = nextItem(threadItem);
+                        kmv.update(threadItem);
+                    }
+                    finished.countDown();
+                }).start();
+            }
+
+            long startTime = System.nanoTime();
+            start.countDown();
+            finished.await();
+            double seconds = (System.nanoTime() - startTime) / 1e9;
+
+            double throughput = threads * ITEMS_PER_THREAD / seconds;
+            if (threads == 1) {
+                singleThreadThroughput = throughput;
+            }
+            System.out.printf("%3d threads %,15.0f updates/sec  speedup %5.2fx  estimate %,d%n", threads, throughput,
+                    throughput / singleThreadThroughput, kmv.query());
+        }
+    }
+
+    // A cheap xorshift generator, so that generating the stream costs very little compared to updating the sketch
+    private static long nextItem(long item) {
+        item ^= item << 13;
+        item ^= item >>> 7;
+        item ^= item << 17;
+        return item;
+    }
+}
@@ -0,0 +1,90 @@
+package counting.distinctcounting;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/** An off-heap storage engine for the KMV. It uses the same max-heap and open-addressed hash table as
+ * HeapKMinimumHashValues (see LongSlotKMinimumHashValues), but both live in a ByteBuffer region instead of a long[].
+ * With a direct ByteBuffer, the hash values are kept outside the Java heap, so many KMVs can be kept without adding to
+ * garbage collection pauses.
+ * With a MappedByteBuffer, the KMV is updated in place inside a memory-mapped file and can be reopened with wrap().
+ *
+ * The region is laid out as follows (little-endian, offsets in bytes):
+ *  0  int     capacity (k)
+ *  4  int     number of hash values stored
+ *  8  long[]  the max-heap, of length capacity
+ *  then long[] the hash table, a power of two at least twice the capacity
+ *
+ */
+
+public class DirectKMinimumHashValues extends LongSlotKMinimumHashValues {
+
+    private static final int CAPACITY_OFFSET = 0;
+    private static final int SIZE_OFFSET = 4;
+    private static final int HEAP_OFFSET = 8;
+
+    private final ByteBuffer region;
+
+    // Allocates a new direct (off-heap) region for k hash values
+    public DirectKMinimumHashValues(int capacity) {
+        this(capacity, ByteBuffer.allocateDirect(requiredBytes(capacity)));
+    }
+
+    // Formats an existing region (e.g. a slice of a memory-mapped file) to hold k hash values, clearing its contents.
+    // The region must be at least requiredBytes(capacity) long
+    public DirectKMinimumHashValues(int capacity, ByteBuffer region) {
+        this(region, capacity);
+        this.region.putInt(CAPACITY_OFFSET, capacity);
+        clear();
+    }
+
+    // This constructor is used for merged KMVs. The hash values must be distinct and sorted in ascending order
+    public DirectKMinimumHashValues(int capacity, long[] sortedHashValues) {
+        this(capacity);
+        fill(sortedHashValues);
+    }
+
+    private DirectKMinimumHashValues(ByteBuffer region, int capacity) {
+        super(capacity);
+        if (region.limit() < requiredBytes(capacity)) {
+            throw new RuntimeException("The region is too small to hold " + capacity + " hash values");
+        }
+        this.region = region.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // Reopens a region previously formatted by this class, e.g. a memory-mapped file written by an earlier run
+    public static DirectKMinimumHashValues wrap(ByteBuffer region) {
+        int capacity = region.duplicate().order(ByteOrder.LITTLE_ENDIAN).getInt(CAPACITY_OFFSET);
+        DirectKMinimumHashValues hashValues = new DirectKMinimumHashValues(region, capacity);
+        hashValues.restoreSize(hashValues.region.getInt(SIZE_OFFSET));
+        return hashValues;
+    }
+
+    // The number of bytes a region needs to hold k hash values
+    public static int requiredBytes(int capacity) {
+        long bytes = HEAP_OFFSET + 8L * slotCount(capacity);
+        if (bytes > Integer.MAX_VALUE) {
+            throw new RuntimeException("k is too large for the direct KMV storage");
+        }
+        return (int) bytes;
+    }
+
+    // Returns the region the hash values are stored in, without copying it
+    public ByteBuffer getRegion() {
+        return region.duplicate();
+    }
+
+    long getSlot(int slot) {
+        return region.getLong(HEAP_OFFSET + 8 * slot);
+    }
+
+    void setSlot(int slot, long value) {
+        region.putLong(HEAP_OFFSET + 8 * slot, value);
+    }
+
+    // The size is kept in the region so that wrap() can read it back
+    @Override
+    void sizeChanged(int size) {
+        region.putInt(SIZE_OFFSET, size);
+    }
+}
@@ -21,12 +21,27 @@ public class FourwiseHash extends Hash {
         this.d = rand.nextLong(super.getPrime());
     }
 
+    // This constructor recreates a hash function from known parameters, e.g. when reading a serialized KMV
+    public FourwiseHash(long a, long b, long c, long d) {
+        super(a, b);
+        if (c < 0 || c >= super.getPrime() || d < 0 || d >= super.getPrime()) {
+            throw new RuntimeException("Hash function parameters must lie between 0 and p");
+        }
+        this.c = c;
+        this.d = d;
+    }
+
     @Override
     // The hash function is in the form ax^3 + bx^2 + cx + d
     public long hashFunction(long x) {
         return Math.abs( ((long) Math.pow(x * super.getA(), 3) + (long) Math.pow(x * super.getB(), 2) + (x * c) + d) % super.getPrime());
     }
 
+    @Override
+    public boolean hasSameParameters(Hash hash) {
+        return super.hasSameParameters(hash) && ((FourwiseHash) hash).getC() == c && ((FourwiseHash) hash).getD() == d;
+    }
+
     public long getC() {
         return c;
     }
@@ -0,0 +1,68 @@
+package counting.distinctcounting;
+
+/** This class measures the cost of each of our hash functions, printing the average time taken per hash in
+ * nanoseconds. Each hash function is timed in its own loop with its concrete type, so that the JIT compiler can inline
+ * it, as it would in a KMV. The hash values are summed and printed so that the work can't be optimised away.
+ */
+
+public class HashBenchmark {
+
+    public static void main(String[] args) {
+
+        // Set the number of items hashed by each hash function
+        final long HASHES = 200000000;
+
+        // Set the number of times each benchmark is repeated. The first repetitions give the JIT compiler time to warm up
+        final int REPETITIONS = 3;
+
+        PairwiseHash pairwiseHash = new PairwiseHash();
+        FourwiseHash fourwiseHash = new FourwiseHash();
+        MersennePrimeHash mersennePairwiseHash = new MersennePrimeHash(2);
+        MersennePrimeHash mersenneFourwiseHash = new MersennePrimeHash(4);
+        MixingHash mixingHash = new MixingHash();
+
+        for (int repetition = 1; repetition <= REPETITIONS; repetition++) {
+            System.out.println("Repetition " + repetition);
+
+            long start = System.nanoTime();
+            long sum = 0;
+            for (long i = 0; i < HASHES; i++) {
+                sum += pairwiseHash.hashFunction(i);
+            }
+            report("PairwiseHash", start, HASHES, sum);
+
+            start = System.nanoTime();
+            sum = 0;
+            for (long i = 0; i < HASHES; i++) {
+                sum += fourwiseHash.hashFunction(i);
+            }
+            report("FourwiseHash", start, HASHES, sum);
+
+            start = System.nanoTime();
+            sum = 0;
+            for (long i = 0; i < HASHES; i++) {
+                sum += mersennePairwiseHash.hashFunction(i);
+            }
+            report("MersennePrimeHash (pairwise)", start, HASHES, sum);
+
+            start = System.nanoTime();
+            sum = 0;
+            for (long i = 0; i < HASHES; i++) {
+                sum += mersenneFourwiseHash.hashFunction(i);
+            }
+            report("MersennePrimeHash (fourwise)", start, HASHES, sum);
+
+            start = System.nanoTime();
+            sum = 0;
+            for (long i = 0; i < HASHES; i++) {
+                sum += mixingHash.hashFunction(i);
+            }
+            report("MixingHash", start, HASHES, sum);
+        }
+    }
+
+    private static void report(String name, long start, long hashes, long sum) {
+        double nanoseconds = System.nanoTime() - start;
+        System.out.printf("%-30s %6.2f ns/hash  (checksum %d)%n", name, nanoseconds / hashes, sum);
+    }
+}
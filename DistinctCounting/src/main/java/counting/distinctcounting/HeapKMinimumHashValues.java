@@ -0,0 +1,32 @@
+package counting.distinctcounting;
+
+/** A primitive storage engine for the KMV. The k minimum values are kept in a long[] max-heap alongside an
+ * open-addressed long[] hash table used to ignore duplicates (see LongSlotKMinimumHashValues). Both live in one array
+ * which is allocated once when the KMV is created, so updates never box a hash value or allocate any memory.
+ *
+ */
+
+public class HeapKMinimumHashValues extends LongSlotKMinimumHashValues {
+
+    private final long[] slots;
+
+    public HeapKMinimumHashValues(int capacity) {
+        super(capacity);
+        slots = new long[(int) slotCount(capacity)];
+        clear();
+    }
+
+    // This constructor is used for merged KMVs. The hash values must be distinct and sorted in ascending order
+    public HeapKMinimumHashValues(int capacity, long[] sortedHashValues) {
+        this(capacity);
+        fill(sortedHashValues);
+    }
+
+    long getSlot(int slot) {
+        return slots[slot];
+    }
+
+    void setSlot(int slot, long value) {
+        slots[slot] = value;
+    }
+}
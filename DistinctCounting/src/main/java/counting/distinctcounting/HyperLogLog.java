@@ -0,0 +1,312 @@
+package counting.distinctcounting;
+
+/** An implementation of Flajolet et al.'s HyperLogLog algorithm. The sketch keeps m = 2^lgK registers. Each item is
+ * hashed to 64 bits: the top lgK bits choose a register, and the register keeps the largest "rank" (the position of the
+ * first 1 bit among the remaining bits) it has seen. Registers are packed into 4, 6 or 8 bits each, so at lgK = 20 the
+ * sketch needs between 512KB and 1MB, where a KMV with k = 10^6 needs 8MB.
+ *
+ * While few registers are set, the sketch stays in a sparse mode which only stores the registers that are non-zero, in
+ * an open-addressed int[] table. It switches to the dense packed registers once the table would become bigger than
+ * them. Both modes hold exactly the same register values, so they give exactly the same estimates.
+ *
+ * 4-bit registers can only hold ranks up to 15. Ranks above this are capped, which starts to bias the sketch downwards
+ * once the number of distinct items reaches about a thousand times the number of registers.
+ *
+ */
+
+public class HyperLogLog {
+
+    // The number of bits used to store each register
+    public enum RegisterWidth {
+        FOUR_BITS(4),
+        SIX_BITS(6),
+        EIGHT_BITS(8);
+
+        private final int bits;
+
+        RegisterWidth(int bits) {
+            this.bits = bits;
+        }
+
+        public int getBits() {
+            return bits;
+        }
+    }
+
+    private static final int MIN_LG_K = 4;
+    private static final int MAX_LG_K = 21;
+    private static final int INITIAL_SPARSE_TABLE_SIZE = 16;
+
+    // 2^32 divided by the golden ratio, used to spread register indexes across the sparse table (Fibonacci hashing)
+    private static final int GOLDEN_RATIO = 0x9E3779B9;
+
+    // INVERSE_POWERS_OF_TWO[r] = 2^-r, used to sum the registers when estimating
+    private static final double[] INVERSE_POWERS_OF_TWO = new double[66];
+
+    static {
+        for (int r = 0; r < INVERSE_POWERS_OF_TWO.length; r++) {
+            INVERSE_POWERS_OF_TWO[r] = Math.scalb(1.0, -r);
+        }
+    }
+
+    private final int lgK;
+    private final RegisterWidth registerWidth;
+    private final MixingHash hashFunction;
+    private final int width;
+    private final int registerMask;
+    private final int maxRank;
+    private final int indexShift;
+    private final long rankSentinel;
+
+    // Dense mode: registers packed into bytes, with one byte of padding so a register can always be read as two bytes
+    private byte[] registers;
+
+    // Sparse mode: each non-zero register is stored as (index << 8) | rank, with 0 marking an empty slot
+    private int[] sparseTable;
+    private int sparseEntries;
+
+    // Algorithm: HyperLogLog: Initialise(lgK), with 6-bit registers
+    public HyperLogLog(int lgK) {
+        this(lgK, RegisterWidth.SIX_BITS);
+    }
+
+    public HyperLogLog(int lgK, RegisterWidth registerWidth) {
+        this(lgK, registerWidth, new MixingHash());
+    }
+
+    // This constructor is used when we want to use the same hash function as another HyperLogLog, so that they can
+    // later be merged
+    public HyperLogLog(int lgK, RegisterWidth registerWidth, MixingHash hashFunction) {
+        if (lgK < MIN_LG_K || lgK > MAX_LG_K) {
+            throw new RuntimeException("lgK has to be between " + MIN_LG_K + " and " + MAX_LG_K);
+        }
+        this.lgK = lgK;
+        this.registerWidth = registerWidth;
+        this.hashFunction = hashFunction;
+        width = registerWidth.getBits();
+        registerMask = (1 << width) - 1;
+        maxRank = Math.min(registerMask, 64 - lgK + 1);
+        indexShift = 64 - lgK;
+        rankSentinel = 1L << (lgK - 1);
+
+        // Very small sketches are dense from the start, as the sparse table would be bigger than the registers
+        if (INITIAL_SPARSE_TABLE_SIZE * 4 >= getDenseBytes()) {
+            registers = new byte[getDenseBytes() + 1];
+        }
+        else {
+            sparseTable = new int[INITIAL_SPARSE_TABLE_SIZE];
+        }
+    }
+
+    // Algorithm: HyperLogLog: Update(s)
+    public void update(long item) {
+        long hashValue = hashFunction.hash64(item);
+
+        // The top lgK bits choose the register. The sentinel bit stops the rank from running past the hash's end
+        int index = (int) (hashValue >>> indexShift);
+        int rank = Math.min(Long.numberOfLeadingZeros((hashValue << lgK) | rankSentinel) + 1, maxRank);
+
+        if (registers != null) {
+            updateDenseRegister(index, rank);
+        }
+        else {
+            updateSparseRegister(index, rank);
+        }
+    }
+
+    // Algorithm: HyperLogLog: Query()
+    public long query() {
+        int m = 1 << lgK;
+        double sum = 0;
+        int zeros = 0;
+
+        if (registers != null) {
+            for (int index = 0; index < m; index++) {
+                int rank = getDenseRegister(index);
+                sum += INVERSE_POWERS_OF_TWO[rank];
+                zeros += rank == 0 ? 1 : 0;
+            }
+        }
+        else {
+            // Every register missing from the sparse table is zero, and contributes 2^0 = 1 to the sum
+            zeros = m - sparseEntries;
+            sum = zeros;
+            for (int entry : sparseTable) {
+                if (entry != 0) {
+                    sum += INVERSE_POWERS_OF_TWO[entry & 0xFF];
+                }
+            }
+        }
+
+        double estimate = alpha(m) * m * m / sum;
+
+        // For small cardinalities, linear counting over the empty registers is more accurate
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros);
+        }
+
+        return Math.round(estimate);
+    }
+
+    // Algorithm: HyperLogLog: Merge(HLL1, HLL2). The merged sketch takes the larger of each pair of registers, and uses
+    // this sketch's register width
+    public HyperLogLog merge(HyperLogLog hll2) {
+
+        // To merge two HyperLogLogs, they must share the same number of registers
+        if (this.lgK != hll2.lgK) {
+            throw new RuntimeException("Can't merge two HyperLogLogs with different lgK values");
+        }
+
+        // To merge two HyperLogLogs, they must use the same hash function
+        if (!this.hashFunction.hasSameParameters(hll2.hashFunction)) {
+            throw new RuntimeException("Can't merge two HyperLogLogs with different hash functions");
+        }
+
+        HyperLogLog merged = new HyperLogLog(lgK, registerWidth, hashFunction);
+        merged.mergeRegistersFrom(this);
+        merged.mergeRegistersFrom(hll2);
+        return merged;
+    }
+
+    public boolean isSparse() {
+        return registers == null;
+    }
+
+    public int getLgK() {
+        return lgK;
+    }
+
+    public RegisterWidth getRegisterWidth() {
+        return registerWidth;
+    }
+
+    public MixingHash getHashFunction() {
+        return hashFunction;
+    }
+
+    public int getBytesUsed() {
+        return registers != null ? getDenseBytes() : sparseTable.length * 4;
+    }
+
+    private int getDenseBytes() {
+        return (int) (((long) width << lgK) + 7) / 8;
+    }
+
+    private static double alpha(int m) {
+        switch (m) {
+            case 16:
+                return 0.673;
+            case 32:
+                return 0.697;
+            case 64:
+                return 0.709;
+            default:
+                return 0.7213 / (1 + 1.079 / m);
+        }
+    }
+
+    private void mergeRegistersFrom(HyperLogLog hll) {
+        if (hll.registers != null) {
+            for (int index = 0; index < (1 << lgK); index++) {
+                int rank = Math.min(hll.getDenseRegister(index), maxRank);
+                if (rank > 0) {
+                    setRegisterMax(index, rank);
+                }
+            }
+        }
+        else {
+            for (int entry : hll.sparseTable) {
+                if (entry != 0) {
+                    setRegisterMax(entry >>> 8, Math.min(entry & 0xFF, maxRank));
+                }
+            }
+        }
+    }
+
+    private void setRegisterMax(int index, int rank) {
+        if (registers != null) {
+            updateDenseRegister(index, rank);
+        }
+        else {
+            updateSparseRegister(index, rank);
+        }
+    }
+
+    private int getDenseRegister(int index) {
+        int bitPosition = index * width;
+        int byteIndex = bitPosition >>> 3;
+        int window = (registers[byteIndex] & 0xFF) | ((registers[byteIndex + 1] & 0xFF) << 8);
+        return (window >>> (bitPosition & 7)) & registerMask;
+    }
+
+    // Replaces a packed register with the larger of its value and the rank. There is no branch: the register is
+    // always written back, even if its value hasn't changed
+    private void updateDenseRegister(int index, int rank) {
+        int bitPosition = index * width;
+        int byteIndex = bitPosition >>> 3;
+        int shift = bitPosition & 7;
+        int window = (registers[byteIndex] & 0xFF) | ((registers[byteIndex + 1] & 0xFF) << 8);
+        int updated = Math.max((window >>> shift) & registerMask, rank);
+        window = (window & ~(registerMask << shift)) | (updated << shift);
+        registers[byteIndex] = (byte) window;
+        registers[byteIndex + 1] = (byte) (window >>> 8);
+    }
+
+    private void updateSparseRegister(int index, int rank) {
+        int mask = sparseTable.length - 1;
+        int slot = sparseSlot(index, sparseTable.length);
+        while (sparseTable[slot] != 0) {
+            int entry = sparseTable[slot];
+            if (entry >>> 8 == index) {
+                if (rank > (entry & 0xFF)) {
+                    sparseTable[slot] = (index << 8) | rank;
+                }
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        sparseTable[slot] = (index << 8) | rank;
+        sparseEntries++;
+
+        // Keep the table at most half full. Once doubling it would take more space than the dense registers, switch
+        if (sparseEntries * 2 > sparseTable.length) {
+            if (sparseTable.length * 2 * 4 >= getDenseBytes()) {
+                convertToDense();
+            }
+            else {
+                resizeSparseTable(sparseTable.length * 2);
+            }
+        }
+    }
+
+    private static int sparseSlot(int index, int tableSize) {
+        return (index * GOLDEN_RATIO) >>> (32 - Integer.numberOfTrailingZeros(tableSize));
+    }
+
+    private void resizeSparseTable(int newSize) {
+        int[] oldTable = sparseTable;
+        sparseTable = new int[newSize];
+        int mask = newSize - 1;
+        for (int entry : oldTable) {
+            if (entry != 0) {
+                int slot = sparseSlot(entry >>> 8, newSize);
+                while (sparseTable[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                sparseTable[slot] = entry;
+            }
+        }
+    }
+
+    private void convertToDense() {
+        registers = new byte[getDenseBytes() + 1];
+        for (int entry : sparseTable) {
+            if (entry != 0) {
+                updateDenseRegister(entry >>> 8, entry & 0xFF);
+            }
+        }
+        sparseTable = null;
+        sparseEntries = 0;
+    }
+}
@@ -0,0 +1,51 @@
+package counting.distinctcounting;
+
+/** This class measures the update throughput of our HyperLogLog with each register width, printing updates per second
+ * along with the final estimate and the space used. A KMV using the primitive storage engine is timed on the same
+ * items for reference.
+ */
+
+public class HyperLogLogBenchmark {
+
+    public static void main(String[] args) {
+
+        // Set the number of distinct items added to each sketch
+        final long UPDATES = 100000000;
+
+        // Set the lgK value of each HyperLogLog (between 4 and 21)
+        final int LGK_VALUE = 14;
+
+        // Set the k value of the reference KMV
+        final int KMV_K_VALUE = 1 << 14;
+
+        // Set the number of times each benchmark is repeated. The first repetitions give the JIT compiler time to warm up
+        final int REPETITIONS = 3;
+
+        for (int repetition = 1; repetition <= REPETITIONS; repetition++) {
+            System.out.println("Repetition " + repetition);
+
+            for (HyperLogLog.RegisterWidth registerWidth : HyperLogLog.RegisterWidth.values()) {
+                HyperLogLog hll = new HyperLogLog(LGK_VALUE, registerWidth);
+                long start = System.nanoTime();
+                for (long i = 0; i < UPDATES; i++) {
+                    hll.update(i);
+                }
+                report("HyperLogLog (" + registerWidth.getBits() + "-bit)", start, UPDATES, hll.query(),
+                        hll.getBytesUsed());
+            }
+
+            PairwiseKMV kmv = new PairwiseKMV(KMV_K_VALUE, KMVStorage.PRIMITIVE_HEAP);
+            long start = System.nanoTime();
+            for (long i = 0; i < UPDATES; i++) {
+                kmv.update(i);
+            }
+            report("KMV (primitive heap)", start, UPDATES, kmv.query(), kmv.getBytesUsed());
+        }
+    }
+
+    private static void report(String name, long start, long updates, long estimate, long bytesUsed) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-25s %8.1f M updates/s  estimate %d  (%d bytes)%n", name, updates / seconds / 1e6,
+                estimate, bytesUsed);
+    }
+}
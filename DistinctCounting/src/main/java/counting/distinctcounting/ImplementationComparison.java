@@ -12,8 +12,8 @@ import org.apache.datasketches.cpc.CpcSketch;
 import org.apache.datasketches.hll.HllSketch;
 import java.util.Random;
 
-/** This class creates a visualisation of the KMV algorithm alongside instances of Apache Datasketches' CPC
- * and HLL implementations. This class creates three charts:
+/** This class creates a visualisation of the KMV algorithm and our own HyperLogLog alongside instances of Apache
+ * Datasketches' CPC and HLL implementations. This class creates three charts:
  * 1) A dynamic visualisation of the estimates of the KMV, CPC and HLL instances
  * 2) A dynamic visualisation of the percentage error of the KMV, CPC and HLL instances
  * 3) A dynamic visualsation of the space usage of the KMV, CPC and HLL instances
@@ -40,6 +40,10 @@ public class ImplementationComparison extends Application {
         // Set the LgK value for our HyperLogLog sketch (between 4 and 21)
         final int HLL_LGK_VALUE = 21;
 
+        // Set the LgK value and register width for our own HyperLogLog (lgK between 4 and 21)
+        final int OUR_HLL_LGK_VALUE = 21;
+        final HyperLogLog.RegisterWidth OUR_HLL_REGISTER_WIDTH = HyperLogLog.RegisterWidth.SIX_BITS;
+
         // Set the number of distinct items we will count to until the algorithm terminates
         final long DISTINCT_COUNT = 250000000;
 
@@ -131,10 +135,23 @@ public class ImplementationComparison extends Application {
         hllEstimate.setName("HLL Estimate");
         LINE_CHART_ESTIMATE.getData().add(hllEstimate);
 
+        XYChart.Series<Number, Number> ourHllAccuracy = new XYChart.Series<>();
+        ourHllAccuracy.setName("Our HLL Accuracy");
+        LINE_CHART_ACCURACY.getData().add(ourHllAccuracy);
+
+        XYChart.Series<Number, Number> ourHllSpace = new XYChart.Series<>();
+        ourHllSpace.setName("Our HLL Space");
+        LINE_CHART_SPACE.getData().add(ourHllSpace);
+
+        XYChart.Series<Number, Number> ourHllEstimate = new XYChart.Series<>();
+        ourHllEstimate.setName("Our HLL Estimate");
+        LINE_CHART_ESTIMATE.getData().add(ourHllEstimate);
+
         // Set up sketches
         HllSketch hllSketch = new HllSketch(HLL_LGK_VALUE);
-        PairwiseKMV kmvSketch = new PairwiseKMV(KMV_K_VALUE);
+        PairwiseKMV kmvSketch = new PairwiseKMV(KMV_K_VALUE, KMVStorage.PRIMITIVE_HEAP);
         CpcSketch cpcSketch = new CpcSketch(CPC_LGK_VALUE);
+        HyperLogLog ourHllSketch = new HyperLogLog(OUR_HLL_LGK_VALUE, OUR_HLL_REGISTER_WIDTH);
 
         // Set up basic true distinct count
         BasicDistinctCountingHash trueDistinctCount = new BasicDistinctCountingHash();
@@ -154,6 +171,7 @@ public class ImplementationComparison extends Application {
                 double hllPercentageError = 0;
                 double kmvPercentageError = 0;
                 double cpcPercentageError = 0;
+                double ourHllPercentageError = 0;
                 long count = trueDistinctCount.query();
 
                 // Calculate the percentage error for sketches
@@ -161,6 +179,7 @@ public class ImplementationComparison extends Application {
                     hllPercentageError = Math.abs(hllSketch.getEstimate() - count) / count * 100;
                     kmvPercentageError = (double) Math.abs(count - kmvSketch.query()) / count * 100;
                     cpcPercentageError = Math.abs(cpcSketch.getEstimate() - count) / count * 100;
+                    ourHllPercentageError = (double) Math.abs(count - ourHllSketch.query()) / count * 100;
                 }
 
                 //Plot on graphs for each sketch
@@ -177,12 +196,17 @@ public class ImplementationComparison extends Application {
                 cpcSpace.getData().add(new XYChart.Data<>(count, (cpcSketch.toByteArray()).length));
                 cpcEstimate.getData().add(new XYChart.Data<>(count, cpcSketch.getEstimate()));
 
+                ourHllAccuracy.getData().add(new XYChart.Data<>(count, ourHllPercentageError));
+                ourHllSpace.getData().add(new XYChart.Data<>(count, ourHllSketch.getBytesUsed()));
+                ourHllEstimate.getData().add(new XYChart.Data<>(count, ourHllSketch.query()));
+
                 // Generate random numbers and update our sketches
                 for (int i = 0; i < UPDATES_PER_FRAME; i++) {
                     long randomNumber = rand.nextLong(UPPER_LIMIT_NUM_TO_ADD);
                     hllSketch.update(randomNumber);
                     kmvSketch.update(randomNumber);
                     cpcSketch.update(randomNumber);
+                    ourHllSketch.update(randomNumber);
                     trueDistinctCount.update(randomNumber);
                 }
 
@@ -1,37 +1,138 @@
 package counting.distinctcounting;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /** An abstract class for the KMV algorithm. As the algorithm can be run using different hash functions, this class
- * is flexible- it can be used for KMVs with any hash function
+ * is flexible- it can be used for KMVs with any hash function. The k minimum hash values can be kept in any of the
+ * storage engines listed in KMVStorage (a tree by default)
  *
  */
 
 public abstract class KMV {
 
-    private final TreeSet<Long> kMinimumHashValues;
+    private final KMinimumHashValues kMinimumHashValues;
+    private final KMVStorage storage;
     private final int kMinimumValues;
 
+    // The k-th smallest hash value seen so far, cached so that most updates can be rejected with a single comparison.
+    // Until k hash values have been stored, every hash value is accepted.
+    private long threshold = Long.MAX_VALUE;
+
+    // The largest number of hash values a batch update collects before inserting them
+    private static final int MAX_BATCH_SURVIVORS = 1024;
+
+    // The hash values of a batch update that passed the threshold check, waiting to be inserted. Only allocated by the
+    // first batch update with a hash value below the threshold
+    private long[] batchSurvivors;
+
     // Algorithm 3.1: KMV: Initialise(k)
     public KMV(int kMinimumValues) {
+        this(kMinimumValues, KMVStorage.TREE_SET);
+    }
+
+    // Algorithm 3.1: KMV: Initialise(k), storing the k minimum values in the chosen storage engine
+    public KMV(int kMinimumValues, KMVStorage storage) {
         // The algorithm doesn't work for values less than or equal to 1
         if (kMinimumValues <= 1) {
             throw new RuntimeException("k has to be greater than 1");
         }
         this.kMinimumValues = kMinimumValues;
-        kMinimumHashValues = new TreeSet<>();
+        this.storage = storage;
+        kMinimumHashValues = storage.create(kMinimumValues);
     }
 
     // A constructor to instantiate a merged KMV
     public KMV(int kMinimumValues, TreeSet<Long> kMinimumHashValues) {
         this.kMinimumValues = kMinimumValues;
+        this.storage = KMVStorage.TREE_SET;
+        this.kMinimumHashValues = new TreeSetKMinimumHashValues(kMinimumHashValues);
+        updateThreshold();
+    }
+
+    // A constructor to instantiate a merged KMV from hash values already held in one of our storage engines
+    public KMV(int kMinimumValues, KMVStorage storage, KMinimumHashValues kMinimumHashValues) {
+        // The algorithm doesn't work for values less than or equal to 1
+        if (kMinimumValues <= 1) {
+            throw new RuntimeException("k has to be greater than 1");
+        }
+        this.kMinimumValues = kMinimumValues;
+        this.storage = storage;
         this.kMinimumHashValues = kMinimumHashValues;
+        updateThreshold();
     }
 
     // Algorithm 3.2: KMV: Update(s)
     public void update(long item, long hashValue) {
+        insert(hashValue);
+    }
+
+    // Algorithm 3.2: KMV: Update(s), applied to items[offset] to items[offset + length - 1]. This has the same effect
+    // as updating with each item in turn. Each hash value is first checked against the threshold, without touching the
+    // storage, and the few that pass are collected. The survivors are then sorted and inserted smallest first in one
+    // pass, which stops at the first survivor no longer below the threshold and skips duplicates within the batch
+    public void update(long[] items, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > items.length - length) {
+            throw new RuntimeException("The batch lies outside the bounds of the items array");
+        }
+
+        Hash hashFunction = getHashFunction();
+        long[] survivors = null;
+        int survivorCount = 0;
+        for (int i = offset; i < offset + length; i++) {
+            long hashValue = hashFunction.hashFunction(items[i]);
+            if (hashValue >= threshold) {
+                continue;
+            }
+            if (survivors == null) {
+                survivors = getBatchSurvivors();
+            }
+            survivors[survivorCount++] = hashValue;
+            if (survivorCount == survivors.length) {
+                insertSorted(survivors, survivorCount);
+                survivorCount = 0;
+            }
+        }
+        if (survivorCount > 0) {
+            insertSorted(survivors, survivorCount);
+        }
+    }
+
+    private long[] getBatchSurvivors() {
+        if (batchSurvivors == null) {
+            batchSurvivors = new long[Math.min(kMinimumValues, MAX_BATCH_SURVIVORS)];
+        }
+        return batchSurvivors;
+    }
+
+    // Inserts the first count hash values, in ascending order. Once one of them is no longer below the threshold,
+    // neither are any of the rest
+    private void insertSorted(long[] hashValues, int count) {
+        Arrays.sort(hashValues, 0, count);
+        for (int i = 0; i < count; i++) {
+            long hashValue = hashValues[i];
+            if (hashValue >= threshold) {
+                return;
+            }
+            if (i == 0 || hashValue != hashValues[i - 1]) {
+                insert(hashValue);
+            }
+        }
+    }
+
+    private void insert(long hashValue) {
+
+        // Once the KMV is full, almost every hash value is bigger than the largest element in the tree. These can be
+        // rejected before the tree is touched. This also rejects the largest element itself, which is a duplicate
+        if (hashValue >= threshold) {
+            return;
+        }
 
         // Ignore duplicates
         if (kMinimumHashValues.contains(hashValue)) {
@@ -41,14 +142,19 @@ public abstract class KMV {
         // Add the item's hash value to the tree if fewer than k items have been added
         if (kMinimumHashValues.size() < kMinimumValues) {
             kMinimumHashValues.add(hashValue);
+            updateThreshold();
             return;
         }
 
-        // Only add the item's hash value if it is smaller than the largest element in the tree
-        long biggestK = kMinimumHashValues.last();
-        if (biggestK > hashValue) {
-            kMinimumHashValues.remove(biggestK);
-            kMinimumHashValues.add(hashValue);
+        // The KMV is full and the item's hash value is smaller than the largest element in the tree, so replace it
+        kMinimumHashValues.replaceLargest(hashValue);
+        threshold = kMinimumHashValues.largest();
+    }
+
+    // Only hash values below the threshold can change the KMV
+    private void updateThreshold() {
+        if (kMinimumHashValues.size() >= kMinimumValues) {
+            threshold = kMinimumHashValues.largest();
         }
     }
 
@@ -60,52 +166,201 @@ public abstract class KMV {
             return kMinimumHashValues.size();
         }
 
-        double area_on_line = (double) prime / kMinimumHashValues.last();
+        double area_on_line = (double) prime / kMinimumHashValues.largest();
         return Math.round((kMinimumValues - 1) * area_on_line);
     }
 
+    // Estimates the number of distinct items seen by both this KMV and kmv2
+    public long intersectionQuery(KMV kmv2) {
+        return setOperationQuery(kmv2, true);
+    }
+
+    // Estimates the number of distinct items seen by this KMV but not by kmv2 (A-not-B)
+    public long differenceQuery(KMV kmv2) {
+        return setOperationQuery(kmv2, false);
+    }
+
+    // Set operations use the theta of each KMV: every hash value below a KMV's theta which it has seen is still stored
+    // in it. Below the smaller of the two thetas, both KMVs therefore know exactly which hash values they have seen, so
+    // we can count the hash values matching the set operation there and scale the count up by the fraction of the hash
+    // range lying below theta. The two KMVs' sorted hash values are walked side by side, as in a merge, so the count
+    // takes time linear in k once the values are sorted. The tree storage reads them out in order, while the primitive
+    // engines sort their O(k) values first
+    private long setOperationQuery(KMV kmv2, boolean intersection) {
+
+        // To compare two KMVs, they must use the same hash function. Unlike merging, k may differ
+        if (this.getClass() != kmv2.getClass() || !getHashFunction().hasSameParameters(kmv2.getHashFunction())) {
+            throw new RuntimeException("Can't compare two KMVs with different hash functions");
+        }
+
+        long prime = getHashFunction().getPrime();
+        long theta = Math.min(this.getTheta(prime), kmv2.getTheta(prime));
+
+        long[] hashValues1 = kMinimumHashValues.toSortedArray();
+        long[] hashValues2 = kmv2.kMinimumHashValues.toSortedArray();
+        long count = 0;
+        int j = 0;
+        for (long hashValue : hashValues1) {
+            if (hashValue >= theta) {
+                break;
+            }
+            while (j < hashValues2.length && hashValues2[j] < hashValue) {
+                j++;
+            }
+            boolean inBoth = j < hashValues2.length && hashValues2[j] == hashValue;
+            if (inBoth == intersection) {
+                count++;
+            }
+        }
+
+        // When neither KMV is full, theta is the whole hash range and the count is exact
+        if (theta == prime) {
+            return count;
+        }
+        return Math.round(count * ((double) prime / theta));
+    }
+
+    // Until k hash values are stored, every hash value seen is still stored, so theta covers the whole hash range.
+    // Afterwards, only the hash values below the largest stored value are guaranteed to be complete
+    private long getTheta(long prime) {
+        if (kMinimumHashValues.size() < kMinimumValues) {
+            return prime;
+        }
+        return kMinimumHashValues.largest();
+    }
+
 
     // Algorithm 3.4: KMV: Merge(KMV1, KMV2)
     public TreeSet<Long> mergeHelper(KMV kmv2) {
 
         // Set up a new tree for our merged KMV
         TreeSet<Long> newKMinimumValues = new TreeSet<>();
+        for (long hashValue : mergeSortedHashValues(kmv2)) {
+            newKMinimumValues.add(hashValue);
+        }
 
-        // Store all of kmv1 and kmv2's hash values in a list. Because of the implementation of this method on
-        // TreeSet structures, the values are stored in sorted, ascending order
-        List<Long> kmv1HashValues = new ArrayList<>(this.getKMinimumHashValues());
-        List<Long> kmv2HashValues = new ArrayList<>(kmv2.getKMinimumHashValues());
+        // Return the merged KMV
+        return newKMinimumValues;
+    }
+
+    // Algorithm 3.4: KMV: Merge(KMV1, KMV2), keeping the merged hash values in this KMV's storage engine
+    public KMinimumHashValues mergeHashValues(KMV kmv2) {
+        return storage.create(kMinimumValues, mergeSortedHashValues(kmv2));
+    }
+
+    // Merges the hash values of this KMV and kmv2, returning the k smallest distinct values in ascending order
+    private long[] mergeSortedHashValues(KMV kmv2) {
+        return SortedHashValues.mergeTwo(this.kMinimumHashValues.toSortedArray(),
+                kmv2.kMinimumHashValues.toSortedArray(), kMinimumValues);
+    }
 
+    // Algorithm 3.4: KMV: Merge(KMV1, ..., KMVn). Rather than merging the KMVs two at a time, the hash values of every
+    // KMV are merged in a single k-way pass which stops once k distinct values have been found. The merged KMV is of
+    // the same type and storage engine as the first KMV in the collection
+    @SuppressWarnings("unchecked")
+    public static <T extends KMV> T mergeAll(Collection<? extends T> kmvs) {
+        KMV first = checkMergeable(kmvs);
+
+        long[][] sortedHashValues = new long[kmvs.size()][];
+        int index = 0;
+        for (KMV kmv : kmvs) {
+            sortedHashValues[index++] = kmv.kMinimumHashValues.toSortedArray();
+        }
+
+        long[] merged = SortedHashValues.mergeAll(sortedHashValues, first.kMinimumValues);
+        return (T) first.createMergedKMV(first.storage.create(first.kMinimumValues, merged));
+    }
+
+    // Algorithm 3.4: KMV: Merge(KMV1, ..., KMVn) for very large numbers of KMVs. The collection is split into groups
+    // which are merged with a k-way merge in parallel, and the results are then merged pairwise as a tree. None of the
+    // KMVs may be updated while the merge runs
+    @SuppressWarnings("unchecked")
+    public static <T extends KMV> T mergeAllParallel(Collection<? extends T> kmvs) {
+        KMV first = checkMergeable(kmvs);
+
+        List<KMV> kmvList = new ArrayList<>(kmvs);
+        long[] merged = ForkJoinPool.commonPool().invoke(
+                new ParallelMergeTask(kmvList, 0, kmvList.size(), first.kMinimumValues));
+        return (T) first.createMergedKMV(first.storage.create(first.kMinimumValues, merged));
+    }
 
-        // This simple algorithm is inspired by the merging of the sorted lists in mergesort. We continue to merge until
-        // we've added k values to our newly established tree, or we've exhausted the items in the kmv1 and kmv2 lists.
-        int kmv1Index = 0;
-        int kmv2Index = 0;
+    // To merge KMVs, they must share the same k value and the same hash function
+    private static <T extends KMV> T checkMergeable(Collection<? extends T> kmvs) {
+        if (kmvs.isEmpty()) {
+            throw new RuntimeException("Can't merge an empty collection of KMVs");
+        }
 
-        while (newKMinimumValues.size() < this.kMinimumValues && kmv1Index < kmv1HashValues.size()
-                && kmv2Index < kmv2HashValues.size()) {
-            if (kmv1HashValues.get(kmv1Index) < kmv2HashValues.get(kmv2Index)) {
-                newKMinimumValues.add(kmv1HashValues.get(kmv1Index));
-                kmv1Index++;
+        T first = kmvs.iterator().next();
+        for (KMV kmv : kmvs) {
+            if (kmv.getKMinimumValues() != first.getKMinimumValues()) {
+                throw new RuntimeException("Can't merge two KMVs with different k values");
             }
-            else {
-                newKMinimumValues.add(kmv2HashValues.get(kmv2Index));
-                kmv2Index++;
+            if (kmv.getClass() != first.getClass() ||
+                    !kmv.getHashFunction().hasSameParameters(first.getHashFunction())) {
+                throw new RuntimeException("Can't merge two KMVs with different hash functions");
             }
         }
+        return first;
+    }
+
+    // Each subclass returns a KMV of its own type, sharing this KMV's k value and hash function
+    protected abstract KMV createMergedKMV(KMinimumHashValues kMinimumHashValues);
+
+    // Splits a list of KMVs in half until the groups are small enough to be merged directly
+    private static final class ParallelMergeTask extends RecursiveTask<long[]> {
+
+        // RecursiveTask is Serializable, although these tasks are never serialized
+        private static final long serialVersionUID = 1L;
+
+        private static final int GROUP_SIZE = 64;
 
-        while (newKMinimumValues.size() < this.kMinimumValues && kmv1Index < kmv1HashValues.size()) {
-            newKMinimumValues.add(kmv1HashValues.get(kmv1Index));
-            kmv1Index++;
+        private final List<KMV> kmvs;
+        private final int from;
+        private final int to;
+        private final int kMinimumValues;
+
+        private ParallelMergeTask(List<KMV> kmvs, int from, int to, int kMinimumValues) {
+            this.kmvs = kmvs;
+            this.from = from;
+            this.to = to;
+            this.kMinimumValues = kMinimumValues;
         }
 
-        while (newKMinimumValues.size() < this.getKMinimumValues() && kmv2Index < kmv2HashValues.size()) {
-            newKMinimumValues.add(kmv2HashValues.get(kmv2Index));
-            kmv2Index++;
+        @Override
+        protected long[] compute() {
+            if (to - from <= GROUP_SIZE) {
+                long[][] sortedHashValues = new long[to - from][];
+                for (int i = from; i < to; i++) {
+                    sortedHashValues[i - from] = kmvs.get(i).kMinimumHashValues.toSortedArray();
+                }
+                return SortedHashValues.mergeAll(sortedHashValues, kMinimumValues);
+            }
+
+            int middle = (from + to) >>> 1;
+            ParallelMergeTask left = new ParallelMergeTask(kmvs, from, middle, kMinimumValues);
+            left.fork();
+            long[] right = new ParallelMergeTask(kmvs, middle, to, kMinimumValues).compute();
+            return SortedHashValues.mergeTwo(left.join(), right, kMinimumValues);
         }
+    }
 
-        // Return the merged KMV
-        return newKMinimumValues;
+    public abstract Hash getHashFunction();
+
+    // Serializes the KMV in the format described in KMVSerialization
+    public byte[] toByteArray() {
+        long[] sortedHashValues = kMinimumHashValues.toSortedArray();
+        byte[] bytes = new byte[KMVSerialization.serializedSizeBytes(getHashFunction(), sortedHashValues)];
+        KMVSerialization.write(ByteBuffer.wrap(bytes), kMinimumValues, getHashFunction(), sortedHashValues);
+        return bytes;
+    }
+
+    // Serializes the KMV at the buffer's current position (e.g. into a memory-mapped file), moving the position past it
+    public void writeTo(ByteBuffer buffer) {
+        KMVSerialization.write(buffer, kMinimumValues, getHashFunction(), kMinimumHashValues.toSortedArray());
+    }
+
+    public int getSerializedSizeBytes() {
+        return KMVSerialization.serializedSizeBytes(getHashFunction(), kMinimumHashValues.toSortedArray());
     }
 
     public int getKMinimumValues() {
@@ -117,12 +372,29 @@ public abstract class KMV {
         return kMinimumHashValues.size() * 8;
     }
 
+    // Returns the k minimum hash values as a tree. For storage engines other than TREE_SET this is a copy
     public TreeSet<Long> getKMinimumHashValues() {
-        return kMinimumHashValues;
+        if (kMinimumHashValues instanceof TreeSetKMinimumHashValues treeSetHashValues) {
+            return treeSetHashValues.getTreeSet();
+        }
+        TreeSet<Long> hashValues = new TreeSet<>();
+        for (long hashValue : kMinimumHashValues.toSortedArray()) {
+            hashValues.add(hashValue);
+        }
+        return hashValues;
     }
 
+    // Returns a copy of the k minimum hash values in ascending order
+    public long[] getSortedHashValues() {
+        return kMinimumHashValues.toSortedArray();
+    }
 
+    public long getThreshold() {
+        return threshold;
+    }
 
-
+    public KMVStorage getStorage() {
+        return storage;
+    }
 
 }
@@ -0,0 +1,205 @@
+package counting.distinctcounting;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/** The binary format used to store and ship KMVs. All values are big-endian, and offsets are relative to the start of
+ * the serialized KMV:
+ *
+ *  0  byte   serial version (currently 1)
+ *  1  byte   hash function type (1 = pairwise, 2 = fourwise)
+ *  2  short  reserved, always 0
+ *  4  int    k
+ *  8  int    number of hash values stored
+ * 12  int    number of bytes of encoded hash values
+ * 16  long   largest hash value stored (0 if there are none)
+ * 24  long   p
+ * 32  long   a
+ * 40  long   b
+ * 48  long   c (fourwise only)
+ * 56  long   d (fourwise only)
+ *
+ * The header is followed by the hash values in ascending order. The first is written as a zigzag varint, and every
+ * later value as the varint of its difference from the previous one. Because the k minimum hash values are packed
+ * closely together, most differences fit in far fewer than 8 bytes. Keeping k, the count and the largest hash value in
+ * the fixed-size header means a serialized KMV can be queried without decoding any hash values.
+ *
+ */
+
+final class KMVSerialization {
+
+    static final byte SERIAL_VERSION = 1;
+    static final byte PAIRWISE_HASH = 1;
+    static final byte FOURWISE_HASH = 2;
+
+    static final int VERSION_OFFSET = 0;
+    static final int HASH_TYPE_OFFSET = 1;
+    static final int K_OFFSET = 4;
+    static final int SIZE_OFFSET = 8;
+    static final int ENCODED_BYTES_OFFSET = 12;
+    static final int LARGEST_OFFSET = 16;
+    static final int PRIME_OFFSET = 24;
+    static final int A_OFFSET = 32;
+    static final int B_OFFSET = 40;
+    static final int C_OFFSET = 48;
+    static final int D_OFFSET = 56;
+
+    static final int PAIRWISE_HEADER_BYTES = 48;
+    static final int FOURWISE_HEADER_BYTES = 64;
+
+    private KMVSerialization() {
+    }
+
+    static byte hashType(Hash hashFunction) {
+        if (hashFunction instanceof FourwiseHash) {
+            return FOURWISE_HASH;
+        }
+        if (hashFunction instanceof PairwiseHash) {
+            return PAIRWISE_HASH;
+        }
+        throw new RuntimeException("Only KMVs using pairwise or fourwise hash functions can be serialized");
+    }
+
+    static int headerBytes(byte hashType) {
+        return hashType == FOURWISE_HASH ? FOURWISE_HEADER_BYTES : PAIRWISE_HEADER_BYTES;
+    }
+
+    // The number of bytes needed to serialize a KMV holding the given hash values
+    static int serializedSizeBytes(Hash hashFunction, long[] sortedHashValues) {
+        return headerBytes(hashType(hashFunction)) + encodedBytes(sortedHashValues);
+    }
+
+    // Writes a KMV at the buffer's current position, moving the position past it
+    static void write(ByteBuffer buffer, int kMinimumValues, Hash hashFunction, long[] sortedHashValues) {
+        byte hashType = hashType(hashFunction);
+        int encodedBytes = encodedBytes(sortedHashValues);
+        int start = buffer.position();
+        int headerBytes = headerBytes(hashType);
+        if (buffer.remaining() < headerBytes + encodedBytes) {
+            throw new RuntimeException("Not enough space left in the buffer to serialize the KMV");
+        }
+
+        ByteBuffer out = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+        out.put(start + VERSION_OFFSET, SERIAL_VERSION);
+        out.put(start + HASH_TYPE_OFFSET, hashType);
+        out.putShort(start + HASH_TYPE_OFFSET + 1, (short) 0);
+        out.putInt(start + K_OFFSET, kMinimumValues);
+        out.putInt(start + SIZE_OFFSET, sortedHashValues.length);
+        out.putInt(start + ENCODED_BYTES_OFFSET, encodedBytes);
+        out.putLong(start + LARGEST_OFFSET,
+                sortedHashValues.length == 0 ? 0 : sortedHashValues[sortedHashValues.length - 1]);
+        out.putLong(start + PRIME_OFFSET, hashFunction.getPrime());
+        out.putLong(start + A_OFFSET, hashFunction.getA());
+        out.putLong(start + B_OFFSET, hashFunction.getB());
+        if (hashType == FOURWISE_HASH) {
+            out.putLong(start + C_OFFSET, ((FourwiseHash) hashFunction).getC());
+            out.putLong(start + D_OFFSET, ((FourwiseHash) hashFunction).getD());
+        }
+
+        out.position(start + headerBytes);
+        long previous = 0;
+        for (int i = 0; i < sortedHashValues.length; i++) {
+            long hashValue = sortedHashValues[i];
+            putVarint(out, i == 0 ? zigzag(hashValue) : hashValue - previous);
+            previous = hashValue;
+        }
+        buffer.position(out.position());
+    }
+
+    // Checks the header of a serialized KMV starting at the given offset, returning its total size in bytes
+    static int validate(ByteBuffer buffer, int start) {
+        if (buffer.limit() - start < PAIRWISE_HEADER_BYTES) {
+            throw new RuntimeException("The buffer is too small to hold a serialized KMV");
+        }
+        if (buffer.get(start + VERSION_OFFSET) != SERIAL_VERSION) {
+            throw new RuntimeException("Unsupported KMV serial version: " + buffer.get(start + VERSION_OFFSET));
+        }
+        byte hashType = buffer.get(start + HASH_TYPE_OFFSET);
+        if (hashType != PAIRWISE_HASH && hashType != FOURWISE_HASH) {
+            throw new RuntimeException("Unknown hash function type in serialized KMV: " + hashType);
+        }
+        int kMinimumValues = buffer.getInt(start + K_OFFSET);
+        int size = buffer.getInt(start + SIZE_OFFSET);
+        int encodedBytes = buffer.getInt(start + ENCODED_BYTES_OFFSET);
+        if (kMinimumValues <= 1 || size < 0 || size > kMinimumValues || encodedBytes < size) {
+            throw new RuntimeException("Corrupt KMV header");
+        }
+        // Summed as longs, so that a corrupt length can't overflow past the check
+        long totalBytes = (long) headerBytes(hashType) + encodedBytes;
+        if (buffer.limit() - start < totalBytes) {
+            throw new RuntimeException("The buffer is too small to hold the serialized KMV");
+        }
+        return (int) totalBytes;
+    }
+
+    // Recreates the hash function of a serialized KMV starting at the given offset
+    static Hash readHashFunction(ByteBuffer buffer, int start) {
+        long a = buffer.getLong(start + A_OFFSET);
+        long b = buffer.getLong(start + B_OFFSET);
+        Hash hashFunction;
+        if (buffer.get(start + HASH_TYPE_OFFSET) == FOURWISE_HASH) {
+            hashFunction = new FourwiseHash(a, b, buffer.getLong(start + C_OFFSET), buffer.getLong(start + D_OFFSET));
+        }
+        else {
+            hashFunction = new PairwiseHash(a, b);
+        }
+
+        if (buffer.getLong(start + PRIME_OFFSET) != hashFunction.getPrime()) {
+            throw new RuntimeException("The serialized KMV uses a different prime");
+        }
+        return hashFunction;
+    }
+
+    // Decodes the hash values of a serialized KMV starting at the given offset, in ascending order
+    static long[] readSortedHashValues(ByteBuffer buffer, int start) {
+        int size = buffer.getInt(start + SIZE_OFFSET);
+        long[] sortedHashValues = new long[size];
+        int position = start + headerBytes(buffer.get(start + HASH_TYPE_OFFSET));
+        long previous = 0;
+        for (int i = 0; i < size; i++) {
+            long value = 0;
+            int shift = 0;
+            byte next;
+            do {
+                next = buffer.get(position++);
+                value |= (long) (next & 0x7F) << shift;
+                shift += 7;
+            } while (next < 0);
+
+            previous = i == 0 ? unzigzag(value) : previous + value;
+            sortedHashValues[i] = previous;
+        }
+        return sortedHashValues;
+    }
+
+    private static int encodedBytes(long[] sortedHashValues) {
+        int bytes = 0;
+        for (int i = 0; i < sortedHashValues.length; i++) {
+            long value = i == 0 ? zigzag(sortedHashValues[0]) : sortedHashValues[i] - sortedHashValues[i - 1];
+            bytes += varintBytes(value);
+        }
+        return bytes;
+    }
+
+    private static int varintBytes(long value) {
+        // Each byte holds 7 bits of the value; zero still needs one byte
+        return Math.max(1, (64 - Long.numberOfLeadingZeros(value) + 6) / 7);
+    }
+
+    private static void putVarint(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    // Zigzag encoding maps small negative and positive numbers to small unsigned numbers
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,52 @@
+package counting.distinctcounting;
+
+/** The storage engines a KMV can keep its k minimum hash values in.
+ * TREE_SET: Java's inbuilt red-black tree. Simple, but every update boxes a Long and allocates a tree node
+ * PRIMITIVE_HEAP: a long[] max-heap plus an open-addressed long[] hash table. Nothing is allocated per update
+ * DIRECT_BUFFER: the same heap and hash table, kept off the Java heap in a direct ByteBuffer
+ *
+ */
+
+public enum KMVStorage {
+
+    TREE_SET {
+        public KMinimumHashValues create(int kMinimumValues) {
+            return new TreeSetKMinimumHashValues();
+        }
+
+        public KMinimumHashValues create(int kMinimumValues, long[] sortedHashValues) {
+            TreeSetKMinimumHashValues hashValues = new TreeSetKMinimumHashValues();
+            for (long hashValue : sortedHashValues) {
+                hashValues.add(hashValue);
+            }
+            return hashValues;
+        }
+    },
+
+    PRIMITIVE_HEAP {
+        public KMinimumHashValues create(int kMinimumValues) {
+            return new HeapKMinimumHashValues(kMinimumValues);
+        }
+
+        public KMinimumHashValues create(int kMinimumValues, long[] sortedHashValues) {
+            return new HeapKMinimumHashValues(kMinimumValues, sortedHashValues);
+        }
+    },
+
+    DIRECT_BUFFER {
+        public KMinimumHashValues create(int kMinimumValues) {
+            return new DirectKMinimumHashValues(kMinimumValues);
+        }
+
+        public KMinimumHashValues create(int kMinimumValues, long[] sortedHashValues) {
+            return new DirectKMinimumHashValues(kMinimumValues, sortedHashValues);
+        }
+    };
+
+    // Creates empty storage for k hash values
+    public abstract KMinimumHashValues create(int kMinimumValues);
+
+    // Creates storage for k hash values, filled with the given distinct hash values sorted in ascending order
+    public abstract KMinimumHashValues create(int kMinimumValues, long[] sortedHashValues);
+
+}
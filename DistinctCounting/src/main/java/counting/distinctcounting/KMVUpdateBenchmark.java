@@ -0,0 +1,106 @@
+package counting.distinctcounting;
+
+import java.util.TreeSet;
+
+/** This class measures the update throughput of the KMV. It compares the original update (which searches the tree for
+ * every hash value before looking at the largest element) against the current update, which rejects hash values above
+ * the cached threshold with a single comparison, and against the batch update, for both KMV storage engines. Results
+ * are printed to the console as updates per second.
+ *
+ * Every run hashes exactly the same stream of items with the same hash function, so the only difference between the
+ * runs is the work done inside the update. The batch runs also include the time taken to fill each batch array.
+ */
+
+public class KMVUpdateBenchmark {
+
+    public static void main(String[] args) {
+
+        // Set the k value of the KMVs
+        final int K_VALUE = 4096;
+
+        // Set the number of items added to each KMV
+        final long STREAM_LENGTH = 50000000;
+
+        // Set the number of items passed to each batch update
+        final int BATCH_SIZE = 16384;
+
+        // Set the number of times each benchmark is repeated. The first repetitions give the JIT compiler time to warm up
+        final int REPETITIONS = 3;
+
+        // Set the seed used to generate the stream of items
+        final long SEED = 42;
+
+        PairwiseHash hashFunction = new PairwiseHash();
+
+        for (int repetition = 1; repetition <= REPETITIONS; repetition++) {
+            System.out.println("Repetition " + repetition);
+
+            long start = System.nanoTime();
+            TreeSet<Long> originalKMV = new TreeSet<>();
+            long item = SEED;
+            for (long i = 0; i < STREAM_LENGTH; i++) {
+                item = nextItem(item);
+                originalUpdate(originalKMV, K_VALUE, hashFunction.hashFunction(item));
+            }
+            report("Before: TreeSet, no threshold", start, STREAM_LENGTH);
+
+            for (KMVStorage storage : KMVStorage.values()) {
+                start = System.nanoTime();
+                PairwiseKMV kmv = new PairwiseKMV(K_VALUE, hashFunction, storage);
+                item = SEED;
+                for (long i = 0; i < STREAM_LENGTH; i++) {
+                    item = nextItem(item);
+                    kmv.update(item);
+                }
+                report("After: " + storage + ", threshold", start, STREAM_LENGTH);
+            }
+
+            for (KMVStorage storage : KMVStorage.values()) {
+                start = System.nanoTime();
+                PairwiseKMV kmv = new PairwiseKMV(K_VALUE, hashFunction, storage);
+                long[] batch = new long[BATCH_SIZE];
+                item = SEED;
+                for (long i = 0; i < STREAM_LENGTH; i += BATCH_SIZE) {
+                    int length = (int) Math.min(BATCH_SIZE, STREAM_LENGTH - i);
+                    for (int j = 0; j < length; j++) {
+                        item = nextItem(item);
+                        batch[j] = item;
+                    }
+                    kmv.update(batch, 0, length);
+                }
+                report("After: " + storage + ", batches", start, STREAM_LENGTH);
+            }
+        }
+    }
+
+    // The KMV update as it was before the threshold was cached (Algorithm 3.2)
+    private static void originalUpdate(TreeSet<Long> kMinimumHashValues, int kMinimumValues, long hashValue) {
+        if (kMinimumHashValues.contains(hashValue)) {
+            return;
+        }
+
+        if (kMinimumHashValues.size() < kMinimumValues) {
+            kMinimumHashValues.add(hashValue);
+            return;
+        }
+
+        long biggestK = kMinimumHashValues.last();
+        if (biggestK > hashValue) {
+            kMinimumHashValues.remove(biggestK);
+            kMinimumHashValues.add(hashValue);
+        }
+    }
+
+    // A cheap xorshift generator, so that generating the stream costs very little compared to updating the KMV
+    private static long nextItem(long item) {
+        item ^= item << 13;
+        item ^= item >>> 7;
+        item ^= item << 17;
+        return item;
+    }
+
+    private static void report(String name, long start, long updates) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-36s %,15.0f updates/sec%n", name, updates / seconds);
+    }
+}
@@ -0,0 +1,34 @@
+package counting.distinctcounting;
+
+/** The storage engine behind a KMV. An implementation holds at most k distinct hash values and only has to answer the
+ * handful of questions the KMV algorithm asks of it: is a hash value already stored, what is the largest stored value,
+ * and how do we swap the largest value for a smaller one. Keeping this behind an interface lets a KMV choose between
+ * Java's tree structures and primitive array backends without changing the algorithm itself.
+ *
+ */
+
+public interface KMinimumHashValues {
+
+    int size();
+
+    boolean contains(long hashValue);
+
+    // Returns the largest hash value currently stored. Only valid when at least one value is stored
+    long largest();
+
+    // Adds a hash value which is not already stored. Callers must ensure there is room for it
+    void add(long hashValue);
+
+    // Removes the largest stored hash value and adds the given (smaller, not already stored) hash value in its place
+    void replaceLargest(long hashValue);
+
+    // Returns a copy of the stored hash values in ascending order
+    long[] toSortedArray();
+
+    // Returns a copy of the stored hash values in no particular order. Storage engines which don't keep their values
+    // sorted can override this to avoid sorting
+    default long[] toArray() {
+        return toSortedArray();
+    }
+
+}
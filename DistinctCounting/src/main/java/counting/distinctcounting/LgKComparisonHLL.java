@@ -11,8 +11,9 @@ import org.apache.datasketches.hll.HllSketch;
 import java.util.ArrayList;
 import java.util.Random;
 
-/** This class creates a visualisation of Apache DataSketches' HLLs with different lgK values. The user can edit input
- *  values to change the data being visualised. This class creates 3 charts:
+/** This class creates a visualisation of Apache DataSketches' HLLs with different lgK values, alongside our own
+ *  HyperLogLog with the same lgK values. The user can edit input values to change the data being visualised. This
+ *  class creates 3 charts:
  * 1) A dynamic visualisation of the space usage of each of the HLLs
  * 2) A dynamic visualisation of the percentage errors of each of the HLLs
  * 3) A dynamic visualisation of the estimates of each of the HLLs plotted against the true distinct count
@@ -82,7 +83,12 @@ public class LgKComparisonHLL extends Application {
         ArrayList<XYChart.Series<Number, Number>> lgKSpaceLines = new ArrayList<>();
         ArrayList<XYChart.Series<Number, Number>> lgKEstimateLines = new ArrayList<>();
 
+        ArrayList<XYChart.Series<Number, Number>> ourLgKPercentageErrorLines = new ArrayList<>();
+        ArrayList<XYChart.Series<Number, Number>> ourLgKSpaceLines = new ArrayList<>();
+        ArrayList<XYChart.Series<Number, Number>> ourLgKEstimateLines = new ArrayList<>();
+
         ArrayList<HllSketch> hllSketches = new ArrayList<>();
+        ArrayList<HyperLogLog> ourHllSketches = new ArrayList<>();
 
         // Create our lines and sketches
         for (int i = 0; i < lgKValues.length; i++) {
@@ -102,6 +108,23 @@ public class LgKComparisonHLL extends Application {
             lgKEstimateLines.add(estimateLine);
 
             hllSketches.add(new HllSketch(lgKValues[i]));
+
+            XYChart.Series<Number, Number> ourAccuracyLine = new XYChart.Series<>();
+            ourAccuracyLine.setName("Our HLL lgK " + lgKValues[i]);
+            LINE_CHART_ACCURACY.getData().add(ourAccuracyLine);
+            ourLgKPercentageErrorLines.add(ourAccuracyLine);
+
+            XYChart.Series<Number, Number> ourSpaceLine = new XYChart.Series<>();
+            ourSpaceLine.setName("Our HLL lgK " + lgKValues[i]);
+            LINE_CHART_SPACE.getData().add(ourSpaceLine);
+            ourLgKSpaceLines.add(ourSpaceLine);
+
+            XYChart.Series<Number, Number> ourEstimateLine = new XYChart.Series<>();
+            ourEstimateLine.setName("Our HLL lgK " + lgKValues[i]);
+            LINE_CHART_ESTIMATE.getData().add(ourEstimateLine);
+            ourLgKEstimateLines.add(ourEstimateLine);
+
+            ourHllSketches.add(new HyperLogLog(lgKValues[i]));
         }
 
         XYChart.Series<Number, Number> trueCountLine = new XYChart.Series<>();
@@ -131,6 +154,15 @@ public class LgKComparisonHLL extends Application {
                             hllSketches.get(i).getCompactSerializationBytes()));
 
                     lgKEstimateLines.get(i).getData().add(new XYChart.Data<>(trueDistinctCount.query(), hllSketches.get(i).getEstimate()));
+
+                    long ourEstimate = ourHllSketches.get(i).query();
+                    ourLgKPercentageErrorLines.get(i).getData().add(new XYChart.Data<>(currentCount,
+                            (currentCount == 0) ? 0 : (double) Math.abs(ourEstimate - currentCount) / currentCount * 100));
+
+                    ourLgKSpaceLines.get(i).getData().add(new XYChart.Data<>(trueDistinctCount.query(),
+                            ourHllSketches.get(i).getBytesUsed()));
+
+                    ourLgKEstimateLines.get(i).getData().add(new XYChart.Data<>(trueDistinctCount.query(), ourEstimate));
                 }
 
                 trueCountLine.getData().add(new XYChart.Data<>(trueDistinctCount.query(), trueDistinctCount.query()));
@@ -141,6 +173,7 @@ public class LgKComparisonHLL extends Application {
                     trueDistinctCount.update(randomNumber);
                     for (int j = 0; j < lgKValues.length; j++) {
                         hllSketches.get(j).update(randomNumber);
+                        ourHllSketches.get(j).update(randomNumber);
                     }
                 }
 
@@ -0,0 +1,233 @@
+package counting.distinctcounting;
+
+import java.util.Arrays;
+
+/** The primitive storage engines' algorithm, written once over a row of long slots. The first k slots hold a max-heap
+ * of the k minimum values (so the largest of them is always in slot 0), and the slots after them hold an
+ * open-addressed hash table used to ignore duplicates. Subclasses only decide where the slots live: a long[] in
+ * HeapKMinimumHashValues, a ByteBuffer region in DirectKMinimumHashValues.
+ *
+ * The hash table uses linear probing with backward-shift deletion and is kept at most half full. Long.MIN_VALUE is
+ * used to mark an empty slot, which is safe as none of our hash functions can produce it.
+ *
+ */
+
+abstract class LongSlotKMinimumHashValues implements KMinimumHashValues {
+
+    static final long EMPTY = Long.MIN_VALUE;
+
+    // 2^64 divided by the golden ratio, used to spread hash values across the table (Fibonacci hashing)
+    private static final long GOLDEN_RATIO = 0x9E3779B97F4A7C15L;
+
+    private static final int MAX_TABLE_BITS = 30;
+
+    private final int capacity;
+    private final int tableMask;
+    private final int tableShift;
+    private int size;
+
+    LongSlotKMinimumHashValues(int capacity) {
+        if (capacity < 1) {
+            throw new RuntimeException("k has to be at least 1");
+        }
+        this.capacity = capacity;
+        int tableSize = tableSize(capacity);
+        tableMask = tableSize - 1;
+        tableShift = 64 - Integer.numberOfTrailingZeros(tableSize);
+    }
+
+    // The number of slots needed to hold k hash values: the heap followed by the table
+    static long slotCount(int capacity) {
+        return (long) capacity + tableSize(capacity);
+    }
+
+    // Keep the table's load factor at or below 0.5 so that probe sequences stay short
+    private static int tableSize(int capacity) {
+        int tableBits = Math.max(1, 64 - Long.numberOfLeadingZeros(2L * capacity - 1));
+        if (tableBits > MAX_TABLE_BITS) {
+            throw new RuntimeException("k is too large for the primitive KMV storage");
+        }
+        return 1 << tableBits;
+    }
+
+    abstract long getSlot(int slot);
+
+    abstract void setSlot(int slot, long value);
+
+    // Called whenever the number of stored hash values changes, for storage that has to record it
+    void sizeChanged(int size) {
+    }
+
+    // Empties the storage
+    final void clear() {
+        for (int slot = 0; slot <= tableMask; slot++) {
+            setSlot(capacity + slot, EMPTY);
+        }
+        setSize(0);
+    }
+
+    // Empties the storage and fills it with distinct hash values sorted in ascending order
+    final void fill(long[] sortedHashValues) {
+        if (sortedHashValues.length > capacity) {
+            throw new RuntimeException("Can't store more than k hash values");
+        }
+        clear();
+
+        // An array sorted in descending order already satisfies the max-heap property
+        for (int i = 0; i < sortedHashValues.length; i++) {
+            long hashValue = sortedHashValues[sortedHashValues.length - 1 - i];
+            setSlot(i, hashValue);
+            tableInsert(hashValue);
+        }
+        setSize(sortedHashValues.length);
+    }
+
+    // Used when the number of stored hash values is read back from existing storage
+    final void restoreSize(int size) {
+        if (size < 0 || size > capacity) {
+            throw new RuntimeException("Corrupt KMV storage");
+        }
+        this.size = size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(long hashValue) {
+        int slot = slotFor(hashValue);
+        long stored;
+        while ((stored = getTableSlot(slot)) != EMPTY) {
+            if (stored == hashValue) {
+                return true;
+            }
+            slot = (slot + 1) & tableMask;
+        }
+        return false;
+    }
+
+    public long largest() {
+        return getSlot(0);
+    }
+
+    public void add(long hashValue) {
+        if (size == capacity) {
+            throw new RuntimeException("Can't store more than k hash values");
+        }
+        tableInsert(hashValue);
+        setSlot(size, hashValue);
+        siftUp(size);
+        setSize(size + 1);
+    }
+
+    public void replaceLargest(long hashValue) {
+        tableRemove(getSlot(0));
+        tableInsert(hashValue);
+        setSlot(0, hashValue);
+        siftDown(0);
+    }
+
+    public long[] toSortedArray() {
+        long[] sortedHashValues = toArray();
+        Arrays.sort(sortedHashValues);
+        return sortedHashValues;
+    }
+
+    @Override
+    public long[] toArray() {
+        long[] hashValues = new long[size];
+        for (int i = 0; i < size; i++) {
+            hashValues[i] = getSlot(i);
+        }
+        return hashValues;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    private void setSize(int size) {
+        this.size = size;
+        sizeChanged(size);
+    }
+
+    private long getTableSlot(int slot) {
+        return getSlot(capacity + slot);
+    }
+
+    private void setTableSlot(int slot, long hashValue) {
+        setSlot(capacity + slot, hashValue);
+    }
+
+    private int slotFor(long hashValue) {
+        return (int) ((hashValue * GOLDEN_RATIO) >>> tableShift);
+    }
+
+    private void tableInsert(long hashValue) {
+        if (hashValue == EMPTY) {
+            throw new RuntimeException("Long.MIN_VALUE can't be stored in the primitive KMV storage");
+        }
+        int slot = slotFor(hashValue);
+        while (getTableSlot(slot) != EMPTY) {
+            slot = (slot + 1) & tableMask;
+        }
+        setTableSlot(slot, hashValue);
+    }
+
+    // Removes a value from the table, shifting later members of the probe sequence back so no tombstones are needed
+    private void tableRemove(long hashValue) {
+        int slot = slotFor(hashValue);
+        while (getTableSlot(slot) != hashValue) {
+            slot = (slot + 1) & tableMask;
+        }
+
+        int next = (slot + 1) & tableMask;
+        long nextValue;
+        while ((nextValue = getTableSlot(next)) != EMPTY) {
+            int home = slotFor(nextValue);
+            // Move the entry back if its home slot doesn't lie cyclically within (slot, next]
+            if (((next - home) & tableMask) >= ((next - slot) & tableMask)) {
+                setTableSlot(slot, nextValue);
+                slot = next;
+            }
+            next = (next + 1) & tableMask;
+        }
+        setTableSlot(slot, EMPTY);
+    }
+
+    private void siftUp(int index) {
+        long hashValue = getSlot(index);
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            long parentValue = getSlot(parent);
+            if (parentValue >= hashValue) {
+                break;
+            }
+            setSlot(index, parentValue);
+            index = parent;
+        }
+        setSlot(index, hashValue);
+    }
+
+    private void siftDown(int index) {
+        long hashValue = getSlot(index);
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            long childValue = getSlot(child);
+            if (child + 1 < size) {
+                long rightValue = getSlot(child + 1);
+                if (rightValue > childValue) {
+                    child++;
+                    childValue = rightValue;
+                }
+            }
+            if (hashValue >= childValue) {
+                break;
+            }
+            setSlot(index, childValue);
+            index = child;
+        }
+        setSlot(index, hashValue);
+    }
+}
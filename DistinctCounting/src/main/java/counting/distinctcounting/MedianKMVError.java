@@ -69,7 +69,7 @@ public class MedianKMVError extends Application {
 
         ArrayList<PairwiseKMV> kmvs = new ArrayList<>(NUMBER_OF_KMVS);
         for (int i = 0; i < NUMBER_OF_KMVS; i++) {
-            kmvs.add(new PairwiseKMV(K_VALUE));
+            kmvs.add(new PairwiseKMV(K_VALUE, KMVStorage.PRIMITIVE_HEAP));
         }
 
         int medianValue = NUMBER_OF_KMVS / 2;
@@ -93,17 +93,15 @@ public class MedianKMVError extends Application {
                 ArrayList<Long> kmvAbsoluteErrors = new ArrayList<>(NUMBER_OF_KMVS);
 
                 // Generate random numbers to add to KMVs
-                ArrayList<Long> randomNumbersToAdd = new ArrayList<>(UPDATES_PER_FRAME);
+                long[] randomNumbersToAdd = new long[UPDATES_PER_FRAME];
                 for (int i = 0; i < UPDATES_PER_FRAME; i++) {
-                    randomNumbersToAdd.add(rand.nextLong(UPPER_LIMIT_NUM_TO_ADD));
+                    randomNumbersToAdd[i] = rand.nextLong(UPPER_LIMIT_NUM_TO_ADD);
                 }
 
                 for (int i = 0; i < NUMBER_OF_KMVS; i++) {
                     PairwiseKMV kmv = kmvs.get(i);
                     kmvAbsoluteErrors.add(Math.abs(kmv.query() - trueDistinctCount.query()));
-                    for (int j = 0; j < UPDATES_PER_FRAME; j++) {
-                        kmv.update(randomNumbersToAdd.get(j));
-                    }
+                    kmv.update(randomNumbersToAdd, 0, UPDATES_PER_FRAME);
                 }
 
                 // Sort absolute errors
@@ -124,7 +122,7 @@ public class MedianKMVError extends Application {
 
                 // Update our true count with the already generated random numbers
                 for (int i = 0; i < UPDATES_PER_FRAME; i++) {
-                    trueDistinctCount.update(randomNumbersToAdd.get(i));
+                    trueDistinctCount.update(randomNumbersToAdd[i]);
                 }
 
                 // Update our current distinct count
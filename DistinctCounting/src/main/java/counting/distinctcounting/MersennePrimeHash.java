@@ -0,0 +1,91 @@
+package counting.distinctcounting;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/** A class that chooses a hash function from a family of k-wise independent functions, computed modulo the Mersenne
+ * prime p = 2^61 - 1. It inherits from a base hash function class.
+ *
+ * Unlike PairwiseHash and FourwiseHash, every product is computed exactly: Math.multiplyHigh gives the top 64 bits of
+ * the 122-bit product, and because 2^61 = 1 (mod p), the product can be reduced by adding its low 61 bits to the bits
+ * above them. No double arithmetic, overflow or % is involved, so hash values are spread evenly across [0, p).
+ *
+ */
+
+public class MersennePrimeHash extends Hash {
+
+    private static final long P = MERSENNE_PRIME;
+
+    // The polynomial's coefficients, constant term first. Coefficients 0 and 1 are also the base class's b and a
+    private final long[] coefficients;
+
+    // The constructor generates k random coefficients between 0 and p, where k is the independence required
+    public MersennePrimeHash(int independence) {
+        this(randomCoefficients(independence));
+    }
+
+    // This constructor recreates a hash function from known coefficients, constant term first
+    public MersennePrimeHash(long[] coefficients) {
+        super(P, coefficients[1], coefficients[0]);
+        for (long coefficient : coefficients) {
+            if (coefficient < 0 || coefficient >= P) {
+                throw new RuntimeException("Hash function parameters must lie between 0 and p");
+            }
+        }
+        this.coefficients = coefficients.clone();
+    }
+
+    private static long[] randomCoefficients(int independence) {
+        if (independence < 2) {
+            throw new RuntimeException("The hash function must be at least pairwise independent");
+        }
+        Random rand = new Random();
+        long[] coefficients = new long[independence];
+        for (int i = 0; i < independence; i++) {
+            coefficients[i] = rand.nextLong(P);
+        }
+        return coefficients;
+    }
+
+    @Override
+    // The hash function is in the form c_(k-1) x^(k-1) + ... + c_1 x + c_0, evaluated using Horner's method
+    public long hashFunction(long x) {
+        long reducedX = reduce(x);
+        long hashValue = coefficients[coefficients.length - 1];
+        for (int i = coefficients.length - 2; i >= 0; i--) {
+            hashValue = reduce(multiplyMod(hashValue, reducedX) + coefficients[i]);
+        }
+        return hashValue;
+    }
+
+    @Override
+    public boolean hasSameParameters(Hash hash) {
+        return super.hasSameParameters(hash) &&
+                Arrays.equals(((MersennePrimeHash) hash).coefficients, coefficients);
+    }
+
+    public int getIndependence() {
+        return coefficients.length;
+    }
+
+    public long[] getCoefficients() {
+        return coefficients.clone();
+    }
+
+    // Returns (a * b) mod p for a, b < p
+    static long multiplyMod(long a, long b) {
+        long low = a * b;
+        long high = Math.multiplyHigh(a, b);
+
+        // The product is high * 2^64 + low. Split it into its low 61 bits and the (at most 61) bits above them
+        long low61 = low & P;
+        long above61 = (low >>> 61) | (high << 3);
+        return reduce(low61 + above61);
+    }
+
+    // Returns x mod p, treating x as an unsigned 64-bit number
+    static long reduce(long x) {
+        long folded = (x & P) + (x >>> 61);
+        return folded >= P ? folded - P : folded;
+    }
+}
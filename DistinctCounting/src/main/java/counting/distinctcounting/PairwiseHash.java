@@ -9,6 +9,15 @@ import java.util.Random;
 
 public class PairwiseHash extends Hash {
 
+    public PairwiseHash() {
+        super();
+    }
+
+    // This constructor recreates a hash function from known parameters, e.g. when reading a serialized KMV
+    public PairwiseHash(long a, long b) {
+        super(a, b);
+    }
+
     @Override
     // The hash function is in the form ax + b
     public long hashFunction(long x) {
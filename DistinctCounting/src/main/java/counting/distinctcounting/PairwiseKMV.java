@@ -1,10 +1,13 @@
 package counting.distinctcounting;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.TreeSet;
 
 /** This class initialises a KMV instance which uses a pairwise hash function. The k minimum values are stored in a
  * binary search tree using Java's inbuilt tree class (red-black trees are used, guaranteeing O(log(n)) insertions,
- * deletions and queries (see parent KMV class). Algorithm references to be found in report
+ * deletions and queries (see parent KMV class). Alternatively, a KMVStorage can be passed in to keep the values in
+ * primitive arrays instead. Algorithm references to be found in report
  *
  */
 
@@ -25,12 +28,43 @@ public class PairwiseKMV extends KMV {
         this.hashFunction = hashFunction;
     }
 
+    // These constructors let the KMV keep its k minimum values in a different storage engine (see KMVStorage)
+    public PairwiseKMV(int kMinimumValues, KMVStorage storage) {
+        super(kMinimumValues, storage);
+        hashFunction = new PairwiseHash();
+    }
+
+    public PairwiseKMV(int kMinimumValues, PairwiseHash hashFunction, KMVStorage storage) {
+        super(kMinimumValues, storage);
+        this.hashFunction = hashFunction;
+    }
+
+    // This constructor keeps the k minimum values in an existing off-heap region, e.g. one reopened from a
+    // memory-mapped file with DirectKMinimumHashValues.wrap(). k is the capacity of the region
+    public PairwiseKMV(PairwiseHash hashFunction, DirectKMinimumHashValues kMinimumHashValues) {
+        super(kMinimumHashValues.getCapacity(), KMVStorage.DIRECT_BUFFER, kMinimumHashValues);
+        this.hashFunction = hashFunction;
+    }
+
+    // This constructor is used by heapify, to build a KMV around hash values already read into their storage engine
+    private PairwiseKMV(int kMinimumValues, PairwiseHash hashFunction, KMVStorage storage,
+                        KMinimumHashValues kMinimumHashValues) {
+        super(kMinimumValues, storage, kMinimumHashValues);
+        this.hashFunction = hashFunction;
+    }
+
     // A constructor to instantiate a merged KMV
     public PairwiseKMV(PairwiseKMV kmv, TreeSet<Long> kMinimumHashValues) {
         super(kmv.getKMinimumValues(), kMinimumHashValues);
         hashFunction = kmv.getHashFunction();
     }
 
+    // A constructor to instantiate a merged KMV which keeps the storage engine of the KMV it was merged from
+    public PairwiseKMV(PairwiseKMV kmv, KMinimumHashValues kMinimumHashValues) {
+        super(kmv.getKMinimumValues(), kmv.getStorage(), kMinimumHashValues);
+        hashFunction = kmv.getHashFunction();
+    }
+
     // Algorithm 3.2: KMV: Update(s)
     public void update(long item) {
 
@@ -61,13 +95,39 @@ public class PairwiseKMV extends KMV {
             throw new RuntimeException("Can't merge two KMVs with different hash functions");
         }
 
-        TreeSet<Long> newKMinimumValues = super.mergeHelper(kmv2);
+        KMinimumHashValues newKMinimumValues = super.mergeHashValues(kmv2);
 
         // Return the merged KMV
         return new PairwiseKMV(this, newKMinimumValues);
     }
 
 
+    // Reads a KMV serialized with toByteArray() or writeTo(), starting at the buffer's current position
+    public static PairwiseKMV heapify(ByteBuffer buffer) {
+        return heapify(buffer, KMVStorage.TREE_SET);
+    }
+
+    // Reads a serialized KMV into the chosen storage engine, moving the buffer's position past it
+    public static PairwiseKMV heapify(ByteBuffer buffer, KMVStorage storage) {
+        ByteBuffer in = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+        int start = in.position();
+        int serializedBytes = KMVSerialization.validate(in, start);
+        if (in.get(start + KMVSerialization.HASH_TYPE_OFFSET) != KMVSerialization.PAIRWISE_HASH) {
+            throw new RuntimeException("The serialized KMV doesn't use a pairwise hash function");
+        }
+
+        int kMinimumValues = in.getInt(start + KMVSerialization.K_OFFSET);
+        PairwiseHash hashFunction = (PairwiseHash) KMVSerialization.readHashFunction(in, start);
+        long[] sortedHashValues = KMVSerialization.readSortedHashValues(in, start);
+        buffer.position(start + serializedBytes);
+
+        return new PairwiseKMV(kMinimumValues, hashFunction, storage, storage.create(kMinimumValues, sortedHashValues));
+    }
+
+    protected PairwiseKMV createMergedKMV(KMinimumHashValues kMinimumHashValues) {
+        return new PairwiseKMV(this, kMinimumHashValues);
+    }
+
     public PairwiseHash getHashFunction() {
         return hashFunction;
     }
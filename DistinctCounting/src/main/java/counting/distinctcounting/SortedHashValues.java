@@ -0,0 +1,124 @@
+package counting.distinctcounting;
+
+import java.util.Arrays;
+
+/** Helper methods for working with hash values stored in primitive arrays sorted in ascending order, as returned by
+ * KMinimumHashValues.toSortedArray(). These are used to merge KMVs without boxing any of their hash values.
+ *
+ */
+
+final class SortedHashValues {
+
+    private SortedHashValues() {
+    }
+
+    // Merges two sorted arrays, returning the k smallest distinct values in ascending order
+    static long[] mergeTwo(long[] hashValues1, long[] hashValues2, int kMinimumValues) {
+        long[] merged = new long[Math.min(kMinimumValues, hashValues1.length + hashValues2.length)];
+
+        // This simple algorithm is inspired by the merging of the sorted lists in mergesort. We continue to merge until
+        // we've added k values to our merged array, or we've exhausted the items in both arrays. Hash values found in
+        // both arrays are only added once.
+        int index1 = 0;
+        int index2 = 0;
+        int size = 0;
+
+        while (size < merged.length && (index1 < hashValues1.length || index2 < hashValues2.length)) {
+            long next;
+            if (index2 == hashValues2.length ||
+                    (index1 < hashValues1.length && hashValues1[index1] < hashValues2[index2])) {
+                next = hashValues1[index1++];
+            }
+            else if (index1 == hashValues1.length || hashValues2[index2] < hashValues1[index1]) {
+                next = hashValues2[index2++];
+            }
+            else {
+                next = hashValues1[index1++];
+                index2++;
+            }
+            merged[size++] = next;
+        }
+
+        return size == merged.length ? merged : Arrays.copyOf(merged, size);
+    }
+
+    // Merges any number of sorted arrays in a single pass, returning the k smallest distinct values in ascending order.
+    // A min-heap holds the index of each array which still has values left, ordered by that array's next value
+    static long[] mergeAll(long[][] sortedArrays, int kMinimumValues) {
+        int[] positions = new int[sortedArrays.length];
+        int[] heap = new int[sortedArrays.length];
+        int heapSize = 0;
+        long total = 0;
+
+        for (int i = 0; i < sortedArrays.length; i++) {
+            if (sortedArrays[i].length > 0) {
+                heap[heapSize] = i;
+                siftUp(sortedArrays, positions, heap, heapSize);
+                heapSize++;
+                total += sortedArrays[i].length;
+            }
+        }
+
+        long[] merged = new long[(int) Math.min(kMinimumValues, total)];
+        int size = 0;
+
+        // Stop as soon as we have k distinct values; the rest of every array can be ignored
+        while (heapSize > 0 && size < merged.length) {
+            int smallest = heap[0];
+            long hashValue = sortedArrays[smallest][positions[smallest]];
+            if (size == 0 || merged[size - 1] != hashValue) {
+                merged[size++] = hashValue;
+            }
+
+            positions[smallest]++;
+            if (positions[smallest] == sortedArrays[smallest].length) {
+                heapSize--;
+                heap[0] = heap[heapSize];
+            }
+            siftDown(sortedArrays, positions, heap, heapSize);
+        }
+
+        return size == merged.length ? merged : Arrays.copyOf(merged, size);
+    }
+
+    private static long head(long[][] sortedArrays, int[] positions, int array) {
+        return sortedArrays[array][positions[array]];
+    }
+
+    private static void siftUp(long[][] sortedArrays, int[] positions, int[] heap, int index) {
+        int array = heap[index];
+        long value = head(sortedArrays, positions, array);
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (head(sortedArrays, positions, heap[parent]) <= value) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = array;
+    }
+
+    private static void siftDown(long[][] sortedArrays, int[] positions, int[] heap, int heapSize) {
+        if (heapSize == 0) {
+            return;
+        }
+        int index = 0;
+        int array = heap[0];
+        long value = head(sortedArrays, positions, array);
+        int half = heapSize >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            if (child + 1 < heapSize &&
+                    head(sortedArrays, positions, heap[child + 1]) < head(sortedArrays, positions, heap[child])) {
+                child++;
+            }
+            if (value <= head(sortedArrays, positions, heap[child])) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = array;
+    }
+}
@@ -0,0 +1,57 @@
+package counting.distinctcounting;
+
+import java.util.TreeSet;
+
+/** The original storage engine for the KMV. The k minimum values are stored in Java's inbuilt red-black tree, which
+ * guarantees O(log(n)) insertions, deletions and queries, but boxes every hash value and allocates a tree node per
+ * insertion.
+ *
+ */
+
+public class TreeSetKMinimumHashValues implements KMinimumHashValues {
+
+    private final TreeSet<Long> hashValues;
+
+    public TreeSetKMinimumHashValues() {
+        hashValues = new TreeSet<>();
+    }
+
+    // This constructor wraps an existing tree, e.g. the result of merging two KMVs
+    public TreeSetKMinimumHashValues(TreeSet<Long> hashValues) {
+        this.hashValues = hashValues;
+    }
+
+    public int size() {
+        return hashValues.size();
+    }
+
+    public boolean contains(long hashValue) {
+        return hashValues.contains(hashValue);
+    }
+
+    public long largest() {
+        return hashValues.last();
+    }
+
+    public void add(long hashValue) {
+        hashValues.add(hashValue);
+    }
+
+    public void replaceLargest(long hashValue) {
+        hashValues.pollLast();
+        hashValues.add(hashValue);
+    }
+
+    public long[] toSortedArray() {
+        long[] sortedHashValues = new long[hashValues.size()];
+        int index = 0;
+        for (long hashValue : hashValues) {
+            sortedHashValues[index++] = hashValue;
+        }
+        return sortedHashValues;
+    }
+
+    public TreeSet<Long> getTreeSet() {
+        return hashValues;
+    }
+}
@@ -0,0 +1,79 @@
+package counting.distinctcounting;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/** A read-only view of a serialized KMV (see KMVSerialization) which reads directly from a ByteBuffer instead of
+ * copying the hash values onto the heap. Wrapping a KMV only checks its header, and queries only read the header, so
+ * thousands of KMVs stored back to back in a memory-mapped file can be loaded almost instantly. The hash values are
+ * only decoded when they are asked for, e.g. to turn the view back into an updatable KMV with heapify().
+ *
+ */
+
+public class WrappedKMV {
+
+    private final ByteBuffer buffer;
+
+    private WrappedKMV(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    // Wraps the serialized KMV starting at the buffer's current position, moving the position past it. The returned
+    // view shares the buffer's memory, so it must not be modified while the view is in use
+    public static WrappedKMV wrap(ByteBuffer buffer) {
+        ByteBuffer in = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+        int start = in.position();
+        int serializedBytes = KMVSerialization.validate(in, start);
+        buffer.position(start + serializedBytes);
+        return new WrappedKMV(in.slice(start, serializedBytes).order(ByteOrder.BIG_ENDIAN));
+    }
+
+    // Algorithm 3.3: KMV: Query()
+    public long query() {
+        int kMinimumValues = getKMinimumValues();
+        int size = size();
+
+        // The algorithm is deterministic and offers exact answers when fewer than k hash values are stored
+        if (size < kMinimumValues) {
+            return size;
+        }
+
+        double area_on_line = (double) getPrime() / buffer.getLong(KMVSerialization.LARGEST_OFFSET);
+        return Math.round((kMinimumValues - 1) * area_on_line);
+    }
+
+    public int getKMinimumValues() {
+        return buffer.getInt(KMVSerialization.K_OFFSET);
+    }
+
+    public int size() {
+        return buffer.getInt(KMVSerialization.SIZE_OFFSET);
+    }
+
+    public long getPrime() {
+        return buffer.getLong(KMVSerialization.PRIME_OFFSET);
+    }
+
+    public boolean usesFourwiseHash() {
+        return buffer.get(KMVSerialization.HASH_TYPE_OFFSET) == KMVSerialization.FOURWISE_HASH;
+    }
+
+    // Recreates the hash function the KMV was built with
+    public Hash getHashFunction() {
+        return KMVSerialization.readHashFunction(buffer, 0);
+    }
+
+    // Decodes the hash values of the KMV, in ascending order
+    public long[] getSortedHashValues() {
+        return KMVSerialization.readSortedHashValues(buffer, 0);
+    }
+
+    public int getSerializedSizeBytes() {
+        return buffer.capacity();
+    }
+
+    // Returns the serialized bytes of the KMV, without copying them
+    public ByteBuffer getBuffer() {
+        return buffer.asReadOnlyBuffer();
+    }
+}
@@ -0,0 +1,109 @@
+package counting.frequencycounting;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** A count-min sketch which many threads can update and query at once without locking. The d x t matrix is stored
+ * row by row in one AtomicLongArray, with t rounded up to a power of two as in CountMinSketch.
+ *
+ * The original update adds the weight to each of the item's counters with an atomic getAndAdd, so no update is ever
+ * lost. The conservative update reads the item's counters, then raises each one below (minimum + weight) with a
+ * compareAndSet from the value it read. If any of those counters has changed since it was read, another thread got
+ * there first, and the update starts again from fresh values. Counters are only ever raised, so a retried update can
+ * never make an estimate too small. Queries read the counters without locking, so a query may see some of the
+ * counters of an update that is happening while it runs.
+ *
+ * The counter positions are found by the same SketchHashing as in CountMinSketch, and written to the calling thread's
+ * scratch space there, so updates and queries allocate nothing and threads never share scratch space.
+ *
+ */
+
+public class ConcurrentCountMinSketch {
+
+    private final SketchHashing hashing;
+    private final boolean conservative;
+    private final AtomicLongArray counters;
+
+    // Basic constructor, for a sketch using the original update. t is rounded up to the next power of two
+    public ConcurrentCountMinSketch(int d, int t) {
+        this(d, t, RowHashing.INDEPENDENT, false);
+    }
+
+    // This constructor lets the user choose how the counter in each row is found (see RowHashing), and whether the
+    // conservative update is used
+    public ConcurrentCountMinSketch(int d, int t, RowHashing rowHashing, boolean conservative) {
+        this(new SketchHashing(d, t, rowHashing), conservative);
+    }
+
+    // This constructor is used when we want to use the same matrix size and hash functions as an existing sketch
+    public ConcurrentCountMinSketch(CountMinSketch cms, boolean conservative) {
+        this(cms.hashing, conservative);
+    }
+
+    private ConcurrentCountMinSketch(SketchHashing hashing, boolean conservative) {
+        this.hashing = hashing;
+        this.conservative = conservative;
+        counters = new AtomicLongArray(hashing.size());
+    }
+
+    // Algorithm 4.2, or Algorithm 4.5 for a conservative sketch
+    public void update(long item, long weight) {
+        if (conservative) {
+            conservativeUpdate(item, weight);
+            return;
+        }
+
+        int[] indexes = hashing.counterIndexes(item, hashing.scratch().indexes);
+        for (int index : indexes) {
+            counters.getAndAdd(index, weight);
+        }
+    }
+
+    // Algorithm 4.3
+    public long query(long item) {
+        int[] indexes = hashing.counterIndexes(item, hashing.scratch().indexes);
+        long minimum = Long.MAX_VALUE;
+        for (int index : indexes) {
+            minimum = Math.min(minimum, counters.get(index));
+        }
+        return minimum;
+    }
+
+    public int getD() {
+        return hashing.d;
+    }
+
+    public int getT() {
+        return hashing.t;
+    }
+
+    public boolean isConservative() {
+        return conservative;
+    }
+
+    public RowHashing getRowHashing() {
+        return hashing.rowHashing;
+    }
+
+    private void conservativeUpdate(long item, long weight) {
+        SketchHashing.Scratch scratch = hashing.scratch();
+        int[] indexes = hashing.counterIndexes(item, scratch.indexes);
+        long[] values = scratch.values;
+        int d = indexes.length;
+        boolean raised;
+        do {
+            long minMatrixValue = Long.MAX_VALUE;
+            for (int i = 0; i < d; i++) {
+                values[i] = counters.get(indexes[i]);
+                minMatrixValue = Math.min(minMatrixValue, values[i]);
+            }
+
+            long target = minMatrixValue + weight;
+            raised = true;
+            for (int i = 0; i < d && raised; i++) {
+                if (values[i] < target) {
+                    raised = counters.compareAndSet(indexes[i], values[i], target);
+                }
+            }
+        } while (!raised);
+    }
+}
@@ -0,0 +1,127 @@
+package counting.frequencycounting;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+
+/** This class compares three ways of letting many threads update one count-min sketch:
+ * 1) A CountMinSketchOriginal shared by every thread behind a single lock
+ * 2) A ConcurrentCountMinSketch shared by every thread, with atomic counters and no lock
+ * 3) A CountMinSketchOriginal for each thread, merged into one sketch once every thread has finished
+ * 4) A ShardedCountMinSketch, whose shards are merged into a snapshot in the background
+ *
+ * For each thread count from 1 up to the number of available processors, every thread adds the same number of items
+ * from its own stream. Results are printed to the console as updates per second. The time taken by the per-thread
+ * sketches includes merging them.
+ */
+
+public class ConcurrentCountMinSketchBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+
+        // This sets the d value of the count-min sketches
+        final int NUMBER_OF_HASH_FUNCTIONS = 7;
+
+        // This sets the t value of the count-min sketches
+        final int NUMBER_OF_SLOTS_PER_ROW = 1 << 16;
+
+        // Set the number of items each thread adds to the sketch while being timed
+        final long ITEMS_PER_THREAD = 10000000;
+
+        // Set the range (from 0) of the items added
+        final long MAX_ITEM_TO_ADD = 1000000;
+
+        // Set how often the sharded sketch publishes a snapshot
+        final long PUBLISH_INTERVAL_MILLIS = 100;
+
+        // Set the maximum number of threads to test
+        final int MAX_THREADS = Runtime.getRuntime().availableProcessors();
+
+        CountMinSketchOriginal template = new CountMinSketchOriginal(NUMBER_OF_HASH_FUNCTIONS, NUMBER_OF_SLOTS_PER_ROW,
+                RowHashing.DOUBLE_HASHING);
+
+        for (int threads = 1; threads <= MAX_THREADS; threads++) {
+
+            CountMinSketchOriginal lockedSketch = new CountMinSketchOriginal(template);
+            double seconds = run(threads, ITEMS_PER_THREAD, MAX_ITEM_TO_ADD, (thread, item) -> {
+                synchronized (lockedSketch) {
+                    lockedSketch.update(item, 1);
+                }
+            });
+            report("Locked", threads, ITEMS_PER_THREAD, seconds, lockedSketch.query(1));
+
+            ConcurrentCountMinSketch concurrentSketch = new ConcurrentCountMinSketch(template, false);
+            seconds = run(threads, ITEMS_PER_THREAD, MAX_ITEM_TO_ADD, (thread, item) -> concurrentSketch.update(item, 1));
+            report("Concurrent", threads, ITEMS_PER_THREAD, seconds, concurrentSketch.query(1));
+
+            ConcurrentCountMinSketch conservativeSketch = new ConcurrentCountMinSketch(template, true);
+            seconds = run(threads, ITEMS_PER_THREAD, MAX_ITEM_TO_ADD,
+                    (thread, item) -> conservativeSketch.update(item, 1));
+            report("Concurrent conservative", threads, ITEMS_PER_THREAD, seconds, conservativeSketch.query(1));
+
+            ArrayList<CountMinSketchOriginal> threadSketches = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                threadSketches.add(new CountMinSketchOriginal(template));
+            }
+            long startTime = System.nanoTime();
+            run(threads, ITEMS_PER_THREAD, MAX_ITEM_TO_ADD, (thread, item) -> threadSketches.get(thread).update(item, 1));
+            CountMinSketchOriginal merged = threadSketches.get(0);
+            for (int t = 1; t < threads; t++) {
+                merged = merged.merge(threadSketches.get(t));
+            }
+            seconds = (System.nanoTime() - startTime) / 1e9;
+            report("Per-thread and merge", threads, ITEMS_PER_THREAD, seconds, merged.query(1));
+
+            ShardedCountMinSketch<CountMinSketchOriginal> shardedSketch = new ShardedCountMinSketch<>(template,
+                    CountMinSketchOriginal::new, threads, PUBLISH_INTERVAL_MILLIS);
+            seconds = run(threads, ITEMS_PER_THREAD, MAX_ITEM_TO_ADD, (thread, item) -> shardedSketch.update(item, 1));
+            shardedSketch.close();
+            report("Sharded", threads, ITEMS_PER_THREAD, seconds, shardedSketch.query(1));
+        }
+    }
+
+    private interface Updater {
+        void update(int thread, long item);
+    }
+
+    // Runs the threads and returns the number of seconds until they had all finished
+    private static double run(int threads, long itemsPerThread, long maxItem, Updater updater)
+            throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                long item = thread + 1;
+                for (long i = 0; i < itemsPerThread; i++) {
+                    item = nextItem(item);
+                    updater.update(thread, Math.floorMod(item, maxItem));
+                }
+                finished.countDown();
+            }).start();
+        }
+
+        long startTime = System.nanoTime();
+        start.countDown();
+        finished.await();
+        return (System.nanoTime() - startTime) / 1e9;
+    }
+
+    private static void report(String name, int threads, long itemsPerThread, double seconds, long estimate) {
+        System.out.printf("%-25s %3d threads %,15.0f updates/sec  (estimate for item 1: %d)%n", name, threads,
+                threads * itemsPerThread / seconds, estimate);
+    }
+
+    // A cheap xorshift generator, so that generating the stream costs very little compared to updating the sketch
+    private static long nextItem(long item) {
+        item ^= item << 13;
+        item ^= item >>> 7;
+        item ^= item << 17;
+        return item;
+    }
+}
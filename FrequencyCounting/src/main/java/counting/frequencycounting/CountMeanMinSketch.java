@@ -1,7 +1,5 @@
 package counting.frequencycounting;
 
-import java.util.Arrays;
-
 /**
  * An implementation of Deng and Rafiei's Count-Mean min algorithm. Algorithm references to be found in report.
  */
@@ -11,9 +9,31 @@ public class CountMeanMinSketch extends CountMinSketch {
     // Algorithm 4.6 - keep a tally of the total weights added
     long totalWeight = 0;
 
+    // The largest difference between the total weight and a counter that noiseEstimate() divides with the reciprocal.
+    // Below 2^52 the floating-point quotient is never more than one away from the exact quotient
+    private static final long MAX_RECIPROCAL_DIVIDEND = 1L << 52;
+
+    // 1 / (t - 1). It can be set up here because t is set by the CountMinSketch constructor before this field is
+    // initialised
+    private final double columnsReciprocal = 1.0 / (t - 1);
+
     // Basic constructor
     public CountMeanMinSketch(int d, int t) {
-        super(d, t);
+        this(d, t, RowHashing.INDEPENDENT);
+    }
+
+    // This constructor lets the user choose how the counter in each row is found (see RowHashing)
+    public CountMeanMinSketch(int d, int t, RowHashing rowHashing) {
+        this(d, t, rowHashing, CounterWidth.LONG);
+    }
+
+    // This constructor also lets the user choose the initial width of the counters (see CounterWidth). The noise in a
+    // counter is estimated from the other t - 1 counters in its row, so there must be at least two columns
+    public CountMeanMinSketch(int d, int t, RowHashing rowHashing, CounterWidth counterWidth) {
+        super(d, t, rowHashing, counterWidth);
+        if (this.t < 2) {
+            throw new RuntimeException("A count-mean-min sketch needs t to be at least 2");
+        }
     }
 
     // This constructor is used when we want to create a new sketch with the same parameters
@@ -22,38 +42,38 @@ public class CountMeanMinSketch extends CountMinSketch {
     }
 
     // This constructor is used to create a new merged count-mean-min sketch
-    public CountMeanMinSketch(CountMeanMinSketch cmms, long[][] matrix) {
-        super(cmms, matrix);
+    public CountMeanMinSketch(CountMeanMinSketch cmms, CounterArray counters) {
+        super(cmms, counters);
         this.totalWeight = cmms.getTotalWeight();
     }
 
     // Algorithm 4.7
     public void update(long item, long weight) {
+        int[] indexes = counterIndexes(item, this.indexes);
         for (int i = 0; i < d; i++) {
-            int hashValue = (int) (hashFunctions[i].hashFunction(item) % t);
-            matrix[i][hashValue] += weight;
+            addToCounter(indexes[i], weight);
         }
         //
         totalWeight += weight;
     }
 
-    // Algorithm 4.8
+    // Algorithm 4.8. The counter positions and the estimates go in the thread's scratch space, so queries allocate
+    // nothing and never write to the sketch, and the median is selected in place rather than by sorting
     @Override
     public long query(long item) {
 
         long minimum = Long.MAX_VALUE;
-        long[] estimatesWithNoise = new long[d];
-        long noiseEstimate;
+        SketchHashing.Scratch scratch = hashing.scratch();
+        long[] estimatesWithNoise = scratch.values;
+        int[] indexes = counterIndexes(item, scratch.indexes);
         for (int i = 0; i < d; i++) {
-            int hashValue = (int) (hashFunctions[i].hashFunction(item) % t);
-            minimum = Math.min(minimum, matrix[i][hashValue]);
-            noiseEstimate = (totalWeight - matrix[i][hashValue]) / (t - 1);
-            estimatesWithNoise[i] = matrix[i][hashValue] - noiseEstimate;
+            long counter = getCounter(indexes[i]);
+            minimum = Math.min(minimum, counter);
+            estimatesWithNoise[i] = counter - noiseEstimate(totalWeight - counter);
         }
 
-        // Find the median
-        Arrays.sort(estimatesWithNoise);
-        long estimate = estimatesWithNoise[estimatesWithNoise.length / 2];
+        // Find the median. With an even number of rows this is the upper of the two middle estimates
+        long estimate = MedianSelection.upperMedian(estimatesWithNoise, d);
 
         if (estimate < 0) {
             return 0;
@@ -63,15 +83,53 @@ public class CountMeanMinSketch extends CountMinSketch {
 
     }
 
+    // Returns excess / (t - 1), rounded towards zero like integer division, by multiplying with the reciprocal of t - 1
+    // and then correcting the floating-point quotient by one if needed. Dividends too large (or negative, which only
+    // happens with negative weights) for the correction to be exact fall back to a division
+    private long noiseEstimate(long excess) {
+        long divisor = t - 1;
+        if (excess < 0 || excess >= MAX_RECIPROCAL_DIVIDEND) {
+            return excess / divisor;
+        }
+        long quotient = (long) (excess * columnsReciprocal);
+        long remainder = excess - quotient * divisor;
+        if (remainder < 0) {
+            quotient--;
+        }
+        else if (remainder >= divisor) {
+            quotient++;
+        }
+        return quotient;
+    }
+
     public long getTotalWeight() {
         return totalWeight;
     }
 
+    @Override
+    void clear() {
+        super.clear();
+        totalWeight = 0;
+    }
+
+    // The weights added to the other sketch are added to the total as well
+    @Override
+    void addCounters(CountMinSketch cms2) {
+        if (!(cms2 instanceof CountMeanMinSketch)) {
+            throw new RuntimeException("A count-mean-min sketch can only be merged with another count-mean-min sketch");
+        }
+        super.addCounters(cms2);
+        totalWeight += ((CountMeanMinSketch) cms2).getTotalWeight();
+    }
+
     public CountMeanMinSketch merge(CountMeanMinSketch cmmms2) {
 
-        long[][] mergedMatrix = super.mergeHelper(cmmms2);
+        CounterArray mergedCounters = super.mergeHelper(cmmms2);
 
-        return new CountMeanMinSketch(this, mergedMatrix);
+        // The merged sketch has seen the weights added to both sketches
+        CountMeanMinSketch merged = new CountMeanMinSketch(this, mergedCounters);
+        merged.totalWeight += cmmms2.getTotalWeight();
+        return merged;
     }
 
 }
@@ -0,0 +1,123 @@
+package counting.frequencycounting;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+/** This class measures the query latency and allocation of the count-mean-min sketch. It compares the original query
+ * (which allocates new arrays for the counter positions and noise-corrected estimates, sorts the estimates, and
+ * divides by t - 1 for every row) against the current query, which selects the median in the thread's scratch space
+ * and divides with a precomputed reciprocal. Results are printed to the console as nanoseconds and bytes allocated
+ * per query.
+ *
+ * Allocation is read from the JVM's count of bytes allocated by the benchmark thread, so it includes nothing allocated
+ * by other threads such as the JIT compiler. That count comes from com.sun.management.ThreadMXBean, which is looked up
+ * by reflection so the module only needs java.management. On a JVM without it, allocation is shown as n/a.
+ */
+
+public class CountMeanMinSketchQueryBenchmark {
+
+    private static final ThreadMXBean THREAD_BEAN = ManagementFactory.getThreadMXBean();
+    private static final Method ALLOCATED_BYTES = allocatedBytesMethod();
+
+    public static void main(String[] args) {
+
+        // Set the number of rows (hash functions) in the sketch
+        final int NUMBER_OF_HASH_FUNCTIONS = 7;
+
+        // Set the number of columns in each row of the sketch
+        final int NUMBER_OF_SLOTS_PER_ROW = 1 << 14;
+
+        // Set the number of items added to the sketch before it is queried
+        final int UPDATES = 1000000;
+
+        // Set the number of queries timed in each run
+        final int QUERIES = 20000000;
+
+        // Set the number of times each benchmark is repeated. The first repetitions give the JIT compiler time to warm
+        // up
+        final int REPETITIONS = 3;
+
+        CountMeanMinSketch cmms = new CountMeanMinSketch(NUMBER_OF_HASH_FUNCTIONS, NUMBER_OF_SLOTS_PER_ROW);
+        for (int i = 0; i < UPDATES; i++) {
+            cmms.update(i % 50000, 1);
+        }
+
+        for (int repetition = 1; repetition <= REPETITIONS; repetition++) {
+            System.out.println("Repetition " + repetition);
+
+            // The sum of the estimates is printed so the JIT compiler can't remove the queries
+            long allocated = allocatedBytes();
+            long start = System.nanoTime();
+            long sum = 0;
+            for (int i = 0; i < QUERIES; i++) {
+                sum += originalQuery(cmms, i);
+            }
+            report("Original query", start, allocated, allocatedBytes(), QUERIES, sum);
+
+            allocated = allocatedBytes();
+            start = System.nanoTime();
+            sum = 0;
+            for (int i = 0; i < QUERIES; i++) {
+                sum += cmms.query(i);
+            }
+            report("Current query", start, allocated, allocatedBytes(), QUERIES, sum);
+        }
+    }
+
+    // The query as it was before the scratch space, in-place median selection and the reciprocal were introduced
+    private static long originalQuery(CountMeanMinSketch cmms, long item) {
+        long minimum = Long.MAX_VALUE;
+        long[] estimatesWithNoise = new long[cmms.d];
+        int[] indexes = cmms.counterIndexes(item, new int[cmms.d]);
+        for (int i = 0; i < cmms.d; i++) {
+            long counter = cmms.counters.get(indexes[i]);
+            minimum = Math.min(minimum, counter);
+            long noiseEstimate = (cmms.totalWeight - counter) / (cmms.t - 1);
+            estimatesWithNoise[i] = counter - noiseEstimate;
+        }
+        Arrays.sort(estimatesWithNoise);
+        long estimate = estimatesWithNoise[estimatesWithNoise.length / 2];
+        if (estimate < 0) {
+            return 0;
+        }
+        return Math.min(minimum, estimate);
+    }
+
+    // getThreadAllocatedBytes(long) of com.sun.management.ThreadMXBean, or null if this JVM doesn't provide it
+    private static Method allocatedBytesMethod() {
+        try {
+            Class<?> beanInterface = Class.forName("com.sun.management.ThreadMXBean");
+            if (!beanInterface.isInstance(THREAD_BEAN)) {
+                return null;
+            }
+            return beanInterface.getMethod("getThreadAllocatedBytes", long.class);
+        }
+        catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    // The number of bytes allocated so far by the current thread, or -1 if it can't be measured
+    private static long allocatedBytes() {
+        if (ALLOCATED_BYTES == null) {
+            return -1;
+        }
+        try {
+            return (long) ALLOCATED_BYTES.invoke(THREAD_BEAN, Thread.currentThread().getId());
+        }
+        catch (ReflectiveOperationException e) {
+            return -1;
+        }
+    }
+
+    private static void report(String name, long start, long allocatedBefore, long allocatedAfter, int queries,
+                               long sum) {
+        double nanoseconds = System.nanoTime() - start;
+        String bytes = allocatedBefore < 0 || allocatedAfter < 0 ? "n/a"
+                : String.format("%.1f", (double) (allocatedAfter - allocatedBefore) / queries);
+        System.out.printf("%-15s %8.1f ns/query  %6s bytes/query  (checksum %d)%n", name, nanoseconds / queries, bytes,
+                sum);
+    }
+}
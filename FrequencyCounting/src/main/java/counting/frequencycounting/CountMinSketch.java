@@ -3,80 +3,153 @@ package counting.frequencycounting;
 /**
  * This is an abstract class that sets up the basic features of a count-min sketch (matrix and set of hash functions).
  * This class is used as the parent class for the concrete implementations of different versions of the count-min sketch.
+ *
+ * The d x t matrix is stored row by row in a single array, so that the d counters touched by an update are found with
+ * one multiply-free index calculation each instead of a separate row array lookup. The number of columns t is
+ * rounded up to a power of two, so that a hash value can be mapped to a column with a mask instead of a % operation.
+ *
+ * The columns used by each row are chosen either by d independent hash functions or by double hashing (see RowHashing).
+ * The hash functions and the index calculation live in a SketchHashing, which sketches created from this one share.
+ * Counters can start as narrow as a byte, and are widened automatically when too many of them overflow (see
+ * CounterWidth).
  */
 
 public abstract class CountMinSketch {
 
-    // Parameters of count-min sketch
+    // Parameters of count-min sketch, copied from the hashing. Row i of the matrix is stored at positions i * t to
+    // i * t + t - 1 of counters
     int d;
     int t;
-    long[][] matrix;
-    PairwiseHash[] hashFunctions;
+    int rowShift;
+    int columnMask;
+    CounterArray counters;
+    SketchHashing hashing;
 
-    // Basic constructor
+    // The counters' long[] once they are longs, and null before that. Long counters never overflow, so updates and
+    // queries use the array directly instead of going through the CounterArray
+    long[] longCounters;
+
+    // Scratch space holding the counter positions of the item currently being updated. Because of this, a sketch must
+    // not be updated by more than one thread at a time. Queries use their thread's scratch space in the hashing
+    // instead, so they never write to the sketch
+    int[] indexes;
+
+    // Basic constructor. t is rounded up to the next power of two
     public CountMinSketch(int d, int t) {
-        this.d = d;
-        this.t = t;
-        matrix = new long[d][t];
-        hashFunctions = new PairwiseHash[d];
-        for (int i = 0; i < d; i++) {
-            hashFunctions[i] = new PairwiseHash();
-        }
+        this(d, t, RowHashing.INDEPENDENT);
+    }
+
+    public CountMinSketch(int d, int t, RowHashing rowHashing) {
+        this(d, t, rowHashing, CounterWidth.LONG);
+    }
+
+    public CountMinSketch(int d, int t, RowHashing rowHashing, CounterWidth counterWidth) {
+        setHashing(new SketchHashing(d, t, rowHashing));
+        setCounters(CounterArray.create(counterWidth, hashing.size()));
     }
 
     // Constructor used to set up a new count-min sketch with the same parameters of an existing sketch
     public CountMinSketch(CountMinSketch cms) {
-        this.d = cms.getD();
-        this.t = cms.getT();
-        matrix = new long[d][t];
-        hashFunctions = cms.getHashFunctions();
+        setHashing(cms.hashing);
+        setCounters(CounterArray.create(cms.getCounterWidth(), hashing.size()));
     }
 
     // This constructor is called for merged count-min sketches
-    public CountMinSketch(CountMinSketch cms, long[][] matrix) {
-        this.d = cms.getD();
-        this.t = cms.getT();
-        this.matrix = matrix;
-        hashFunctions = cms.getHashFunctions();
+    public CountMinSketch(CountMinSketch cms, CounterArray counters) {
+        setHashing(cms.hashing);
+        if (counters.length() != hashing.size()) {
+            throw new RuntimeException("The counter array must hold d * t counters");
+        }
+        setCounters(counters);
     }
 
-    public abstract void update(long item, long weight);
+    private void setHashing(SketchHashing hashing) {
+        this.hashing = hashing;
+        d = hashing.d;
+        t = hashing.t;
+        rowShift = hashing.rowShift;
+        columnMask = hashing.columnMask;
+        indexes = new int[d];
+    }
 
-    // Algorithm 4.4
-    public long[][] mergeHelper(CountMinSketch cms2) {
-        // Matrix size must be the same to merge two count-min sketches
-        if (this.d != cms2.d || this.t != cms2.t) {
-            throw new RuntimeException("To merge count-min sketches, the matrix size has to be the same");
+    private void setCounters(CounterArray counters) {
+        this.counters = counters;
+        longCounters = counters.longArray();
+    }
+
+    // Fills an array of length d with the position in the counter array of the counter each row maps the item to
+    final int[] counterIndexes(long item, int[] indexes) {
+        return hashing.counterIndexes(item, indexes);
+    }
+
+    long getCounter(int row, int column) {
+        return getCounter((row << rowShift) | column);
+    }
+
+    // Reads the counter at a position in the counter array
+    final long getCounter(int index) {
+        long[] longCounters = this.longCounters;
+        if (longCounters != null) {
+            return longCounters[index];
         }
+        return counters.get(index);
+    }
 
-        // The sketches must also share the same hash functions
-        for (int i = 0; i < d; i++) {
-            PairwiseHash pairwiseHash1 = this.hashFunctions[i];
-            PairwiseHash pairwiseHash2 = cms2.hashFunctions[i];
+    // Sets the counter at a position in the counter array, widening every counter if the value doesn't fit and the
+    // counter array has no room left for it
+    final void setCounter(int index, long value) {
+        long[] longCounters = this.longCounters;
+        if (longCounters != null) {
+            longCounters[index] = value;
+            return;
+        }
+        while (!counters.trySet(index, value)) {
+            setCounters(counters.widen());
+        }
+    }
 
-            if (pairwiseHash1.getA() != pairwiseHash2.getA() || pairwiseHash1.getB() != pairwiseHash2.getB() ||
-            pairwiseHash1.getPrime() != pairwiseHash2.getPrime()) {
-                throw new RuntimeException("To merge count-min sketches, they must share the same hash functions");
-            }
+    final void addToCounter(int index, long weight) {
+        long[] longCounters = this.longCounters;
+        if (longCounters != null) {
+            longCounters[index] += weight;
+            return;
         }
+        setCounter(index, counters.get(index) + weight);
+    }
 
-        // Simply add each cell of the matrix together and store in the merged matrix
-        long[][] newMatrix = new long[d][t];
-        for (int i = 0; i < d; i++) {
-            for (int j = 0; j < t; j++) {
-                newMatrix[i][j] = this.getMatrix()[i][j] + cms2.getMatrix()[i][j];
-            }
+    public abstract void update(long item, long weight);
+
+    // Sets every counter back to zero, keeping the current counter width, so the sketch can be reused
+    void clear() {
+        counters.clear();
+    }
+
+    // Algorithm 4.4 done in place: adds every counter of a sketch with the same matrix size and hash functions to this
+    // sketch's counters, widening them if needed
+    void addCounters(CountMinSketch cms2) {
+        hashing.checkMergeable(cms2.hashing);
+        int size = hashing.size();
+        for (int i = 0; i < size; i++) {
+            addToCounter(i, cms2.getCounter(i));
         }
+    }
 
-        return newMatrix;
+    // Algorithm 4.4
+    public CounterArray mergeHelper(CountMinSketch cms2) {
+        // Matrix size and hash functions must be the same to merge two count-min sketches
+        hashing.checkMergeable(cms2.hashing);
+
+        // Simply add each cell of the matrix together and store in the merged matrix. The sketches' counters can have
+        // different widths, and the merged counters are wide enough to hold every sum
+        return CounterArray.sum(this.counters, cms2.counters);
     }
 
     // Algorithm 4.3
     public long query(long item) {
         long minimum = Long.MAX_VALUE;
+        int[] indexes = counterIndexes(item, hashing.scratch().indexes);
         for (int i = 0; i < d; i++) {
-            int hashValue = (int) (hashFunctions[i].hashFunction(item) % t);
-            minimum = Math.min(minimum, matrix[i][hashValue]);
+            minimum = Math.min(minimum, getCounter(indexes[i]));
         }
 
         return minimum;
@@ -90,12 +163,30 @@ public abstract class CountMinSketch {
         return t;
     }
 
-    public long[][] getMatrix() {
-        return matrix;
+    // Returns a read-only view of the matrix, without copying the counters
+    public CounterMatrix getMatrix() {
+        return new CounterMatrix(this);
     }
 
     public PairwiseHash[] getHashFunctions() {
-        return hashFunctions;
+        return hashing.hashFunctions;
+    }
+
+    public MixingHash getDoubleHashFunction() {
+        return hashing.doubleHashFunction;
+    }
+
+    public RowHashing getRowHashing() {
+        return hashing.rowHashing;
+    }
+
+    // The current width of the counters, which grows once too many counters overflow
+    public CounterWidth getCounterWidth() {
+        return counters.getWidth();
+    }
+
+    public long getBytesUsed() {
+        return counters.getBytesUsed();
     }
 
     // A simple function to display the values stored in the count-min sketch matrix
@@ -103,7 +194,7 @@ public abstract class CountMinSketch {
         for (int i = 0; i < d; i++) {
             System.out.println();
             for (int j = 0; j < t; j++) {
-                System.out.print(matrix[i][j] + " ");
+                System.out.print(getCounter(i, j) + " ");
             }
         }
         System.out.println();
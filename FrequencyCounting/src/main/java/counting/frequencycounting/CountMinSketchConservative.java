@@ -8,37 +8,48 @@ public class CountMinSketchConservative extends CountMinSketch {
         super(d, t);
     }
 
+    // This constructor lets the user choose how the counter in each row is found (see RowHashing)
+    public CountMinSketchConservative(int d, int t, RowHashing rowHashing) {
+        super(d, t, rowHashing);
+    }
+
+    // This constructor also lets the user choose the initial width of the counters (see CounterWidth)
+    public CountMinSketchConservative(int d, int t, RowHashing rowHashing, CounterWidth counterWidth) {
+        super(d, t, rowHashing, counterWidth);
+    }
+
     // This constructor is used when we want to create a new sketch with the same parameters
     public CountMinSketchConservative(CountMinSketchConservative cmsConservative) {
         super(cmsConservative);
     }
 
     // This constructor is used to create a new merged count-mean-min sketch
-    public CountMinSketchConservative(CountMinSketchConservative cmsConservative, long[][] matrix) {
-        super(cmsConservative, matrix);
+    public CountMinSketchConservative(CountMinSketchConservative cmsConservative, CounterArray counters) {
+        super(cmsConservative, counters);
     }
 
     // Algorithm 4.5
     public void update(long item, long weight) {
+        // The item's counters are found once, then reused by both passes
+        int[] indexes = counterIndexes(item, this.indexes);
         long minMatrixValue = Long.MAX_VALUE;
         for (int i = 0; i < d; i++) {
-            int hashValue = (int) (hashFunctions[i].hashFunction(item) % t);
-            minMatrixValue = Math.min(minMatrixValue, matrix[i][hashValue]);
+            minMatrixValue = Math.min(minMatrixValue, getCounter(indexes[i]));
         }
 
         for (int i = 0; i < d; i++) {
-            int hashValue = (int) (hashFunctions[i].hashFunction(item) % t);
-            if (matrix[i][hashValue] - weight < minMatrixValue) {
-                matrix[i][hashValue] = minMatrixValue + weight;
+            int index = indexes[i];
+            if (getCounter(index) - weight < minMatrixValue) {
+                setCounter(index, minMatrixValue + weight);
             }
         }
     }
 
     public CountMinSketchConservative merge(CountMinSketchConservative cms2) {
 
-        long[][] mergedMatrix = super.mergeHelper(cms2);
+        CounterArray mergedCounters = super.mergeHelper(cms2);
 
-        return new CountMinSketchConservative(this, mergedMatrix);
+        return new CountMinSketchConservative(this, mergedCounters);
     }
 
 
@@ -0,0 +1,66 @@
+package counting.frequencycounting;
+
+/** This class measures the cost of finding an item's counters with independent hashing and with double hashing (see
+ * RowHashing), printing the average time per operation in nanoseconds. It times the index calculation on its own, then
+ * updates and queries for each of our count-min sketches. The matrix is kept small enough to stay in cache, so that
+ * the timings are dominated by hashing rather than memory accesses.
+ */
+
+public class CountMinSketchHashingBenchmark {
+
+    public static void main(String[] args) {
+
+        // This sets the d value of the count-min sketches
+        final int NUMBER_OF_HASH_FUNCTIONS = 7;
+
+        // This sets the t value of the count-min sketches
+        final int NUMBER_OF_SLOTS_PER_ROW = 4096;
+
+        // Set the number of operations timed in each benchmark
+        final long OPERATIONS = 20000000;
+
+        // Set the number of times each benchmark is repeated. The first repetitions give the JIT compiler time to warm up
+        final int REPETITIONS = 3;
+
+        for (int repetition = 1; repetition <= REPETITIONS; repetition++) {
+            System.out.println("Repetition " + repetition);
+
+            for (RowHashing rowHashing : RowHashing.values()) {
+                CountMinSketch[] sketches = {
+                        new CountMinSketchOriginal(NUMBER_OF_HASH_FUNCTIONS, NUMBER_OF_SLOTS_PER_ROW, rowHashing),
+                        new CountMinSketchConservative(NUMBER_OF_HASH_FUNCTIONS, NUMBER_OF_SLOTS_PER_ROW, rowHashing),
+                        new CountMeanMinSketch(NUMBER_OF_HASH_FUNCTIONS, NUMBER_OF_SLOTS_PER_ROW, rowHashing)
+                };
+
+                long start = System.nanoTime();
+                long sum = 0;
+                for (long i = 0; i < OPERATIONS; i++) {
+                    sum += sketches[0].counterIndexes(i, sketches[0].indexes)[NUMBER_OF_HASH_FUNCTIONS - 1];
+                }
+                report("Indexes only", rowHashing, start, OPERATIONS, sum);
+
+                for (CountMinSketch sketch : sketches) {
+                    String name = sketch.getClass().getSimpleName();
+
+                    start = System.nanoTime();
+                    for (long i = 0; i < OPERATIONS; i++) {
+                        sketch.update(i, 1);
+                    }
+                    report(name + " update", rowHashing, start, OPERATIONS, sketch.query(0));
+
+                    start = System.nanoTime();
+                    sum = 0;
+                    for (long i = 0; i < OPERATIONS; i++) {
+                        sum += sketch.query(i);
+                    }
+                    report(name + " query", rowHashing, start, OPERATIONS, sum);
+                }
+            }
+        }
+    }
+
+    private static void report(String name, RowHashing rowHashing, long start, long operations, long sum) {
+        double nanoseconds = System.nanoTime() - start;
+        System.out.printf("%-36s %-15s %7.2f ns/op  (checksum %d)%n", name, rowHashing, nanoseconds / operations, sum);
+    }
+}
@@ -7,30 +7,40 @@ public class CountMinSketchOriginal extends CountMinSketch {
         super(d, t);
     }
 
+    // This constructor lets the user choose how the counter in each row is found (see RowHashing)
+    public CountMinSketchOriginal(int d, int t, RowHashing rowHashing) {
+        super(d, t, rowHashing);
+    }
+
+    // This constructor also lets the user choose the initial width of the counters (see CounterWidth)
+    public CountMinSketchOriginal(int d, int t, RowHashing rowHashing, CounterWidth counterWidth) {
+        super(d, t, rowHashing, counterWidth);
+    }
+
     // This constructor is used when we want to create a new sketch with the same parameters as an existing sketch
     public CountMinSketchOriginal(CountMinSketchOriginal cms) {
     super(cms);
     }
 
     // This constructor is used to create a new merged count min sketch original
-    public CountMinSketchOriginal(CountMinSketchOriginal cms, long[][] matrix) {
-        super(cms, matrix);
+    public CountMinSketchOriginal(CountMinSketchOriginal cms, CounterArray counters) {
+        super(cms, counters);
     }
 
 
     // Algorithm 4.2
     public void update(long item, long weight) {
+        int[] indexes = counterIndexes(item, this.indexes);
         for (int i = 0; i < d; i++) {
-            int hashValue = (int) (hashFunctions[i].hashFunction(item) % t);
-            matrix[i][hashValue] += weight;
+            addToCounter(indexes[i], weight);
         }
     }
 
     public CountMinSketchOriginal merge(CountMinSketchOriginal cms2) {
 
-        long[][] mergedMatrix = super.mergeHelper(cms2);
+        CounterArray mergedCounters = super.mergeHelper(cms2);
 
-        return new CountMinSketchOriginal(this, mergedMatrix);
+        return new CountMinSketchOriginal(this, mergedCounters);
     }
 }
 
@@ -11,7 +11,8 @@ import javafx.stage.Stage;
 import java.util.Map;
 import java.util.Random;
 
-/** This class visualises how our count-min sketches perform. It creates four charts:
+/** This class visualises how our count-min sketches and our count sketch perform. All of them use the same d x t
+ * matrix size, so their accuracy can be compared for the same memory. It creates four charts:
  * 1) A dynamic visualisation of the max error percentage (in terms of L1-norm) of all the items added
  * 2) A dynamic visualisation of the average error percentage (in terms of L1-norm) of all items added
  * 3) A dynamic visualisation of the percentage of items that fail to deliver an answer within the epsilon level of accuracy.
@@ -33,7 +34,7 @@ public class CountMinSketchesComparison extends Application {
         // This sets the d value of the count-min sketch
         final int NUMBER_OF_HASH_FUNCTIONS = 7;
 
-        // This sets the t value of the count-min sketch
+        // This sets the t value of the count-min sketch (rounded up to the next power of two)
         final int NUMBER_OF_SLOTS_PER_ROW = 200;
 
         // Set the number of times the update function is called
@@ -59,13 +60,15 @@ public class CountMinSketchesComparison extends Application {
 
 
         // Initialise our count-min sketches - we have a count min sketch original, a count-min conservative,
-        // and a count-mean-min
+        // and a count-mean-min. We also have a count sketch, which uses the same matrix size
         CountMinSketch cmOriginal = new CountMinSketchOriginal(NUMBER_OF_HASH_FUNCTIONS, NUMBER_OF_SLOTS_PER_ROW);
         CountMinSketch cmConservative = new CountMinSketchConservative(NUMBER_OF_HASH_FUNCTIONS, NUMBER_OF_SLOTS_PER_ROW);
         CountMinSketch cmMean = new CountMeanMinSketch(NUMBER_OF_HASH_FUNCTIONS, NUMBER_OF_SLOTS_PER_ROW);
+        CountMinSketch cmCount = new CountSketch(NUMBER_OF_HASH_FUNCTIONS, NUMBER_OF_SLOTS_PER_ROW);
 
-        // Calculate the theoretical guarantees from the number of rows and columns
-        double epsilonGuarantee = (double) 2 / NUMBER_OF_SLOTS_PER_ROW;
+        // Calculate the theoretical guarantees from the number of rows and columns. The sketches round t up to a power
+        // of two, so we use the number of columns they actually have
+        double epsilonGuarantee = (double) 2 / cmOriginal.getT();
         double deltaGuarantee = Math.pow(0.5, NUMBER_OF_HASH_FUNCTIONS);
         double percentageGuarantee = deltaGuarantee * 100;
 
@@ -126,10 +129,13 @@ public class CountMinSketchesComparison extends Application {
         cmConservativeAverageAbsoluteErrorLine.setName("cmConservativeLine");
         XYChart.Series<Number, Number> cmMeanAverageAbsoluteErrorLine = new XYChart.Series<>();
         cmMeanAverageAbsoluteErrorLine.setName("cmMeanLine");
+        XYChart.Series<Number, Number> cmCountAverageAbsoluteErrorLine = new XYChart.Series<>();
+        cmCountAverageAbsoluteErrorLine.setName("countSketchLine");
 
         LINE_CHART_ABSOLUTE_ERROR.getData().add(cmOriginalAverageAbsoluteErrorLine);
         LINE_CHART_ABSOLUTE_ERROR.getData().add(cmConservativeAverageAbsoluteErrorLine);
         LINE_CHART_ABSOLUTE_ERROR.getData().add(cmMeanAverageAbsoluteErrorLine);
+        LINE_CHART_ABSOLUTE_ERROR.getData().add(cmCountAverageAbsoluteErrorLine);
 
         // Set up percentage error line and add to relevant line chart
         XYChart.Series<Number, Number> cmOriginalPercentageErrorLine = new XYChart.Series<>();
@@ -138,10 +144,13 @@ public class CountMinSketchesComparison extends Application {
         cmConservativePercentageErrorLine.setName("cmConservativeLine");
         XYChart.Series<Number, Number> cmMeanPercentageErrorLine = new XYChart.Series<>();
         cmMeanPercentageErrorLine.setName("cmMeanLine");
+        XYChart.Series<Number, Number> cmCountPercentageErrorLine = new XYChart.Series<>();
+        cmCountPercentageErrorLine.setName("countSketchLine");
 
         LINE_CHART_PERCENTAGE_TOTAL_WEIGHT.getData().add(cmOriginalPercentageErrorLine);
         LINE_CHART_PERCENTAGE_TOTAL_WEIGHT.getData().add(cmConservativePercentageErrorLine);
         LINE_CHART_PERCENTAGE_TOTAL_WEIGHT.getData().add(cmMeanPercentageErrorLine);
+        LINE_CHART_PERCENTAGE_TOTAL_WEIGHT.getData().add(cmCountPercentageErrorLine);
 
         // Set up max percentage error line and add to relevant line chart
         XYChart.Series<Number, Number> cmOriginalMaxErrorLine = new XYChart.Series<>();
@@ -150,10 +159,13 @@ public class CountMinSketchesComparison extends Application {
         cmConservativeMaxErrorLine.setName("cmConservativeLine");
         XYChart.Series<Number, Number> cmMeanMaxErrorLine = new XYChart.Series<>();
         cmMeanMaxErrorLine.setName("cmMeanLine");
+        XYChart.Series<Number, Number> cmCountMaxErrorLine = new XYChart.Series<>();
+        cmCountMaxErrorLine.setName("countSketchLine");
 
         LINE_CHART_MAX_ERROR.getData().add(cmOriginalMaxErrorLine);
         LINE_CHART_MAX_ERROR.getData().add(cmConservativeMaxErrorLine);
         LINE_CHART_MAX_ERROR.getData().add(cmMeanMaxErrorLine);
+        LINE_CHART_MAX_ERROR.getData().add(cmCountMaxErrorLine);
 
         // Set up error percentage line and add to relevant line chart
         XYChart.Series<Number, Number> cmOriginalErrorPercentageLine = new XYChart.Series<>();
@@ -162,6 +174,8 @@ public class CountMinSketchesComparison extends Application {
         cmConservativeErrorPercentageLine.setName("cmConservativeErrorPercentageLine");
         XYChart.Series<Number, Number> cmMeanErrorPercentageLine = new XYChart.Series<>();
         cmMeanErrorPercentageLine.setName("cmMeanErrorPercentageLine");
+        XYChart.Series<Number, Number> cmCountErrorPercentageLine = new XYChart.Series<>();
+        cmCountErrorPercentageLine.setName("countSketchErrorPercentageLine");
 
         XYChart.Series<Number, Number> errorPercentageAllowed = new XYChart.Series<>();
         errorPercentageAllowed.setName("Error percentage allowed");
@@ -169,6 +183,7 @@ public class CountMinSketchesComparison extends Application {
         LINE_CHART_ERROR_PERCENTAGE.getData().add(cmOriginalErrorPercentageLine);
         LINE_CHART_ERROR_PERCENTAGE.getData().add(cmConservativeErrorPercentageLine);
         LINE_CHART_ERROR_PERCENTAGE.getData().add(cmMeanErrorPercentageLine);
+        LINE_CHART_ERROR_PERCENTAGE.getData().add(cmCountErrorPercentageLine);
         LINE_CHART_ERROR_PERCENTAGE.getData().add(errorPercentageAllowed);
 
         // We also need a frequency counter to store the true count to check the accuracy of our sketches
@@ -180,6 +195,7 @@ public class CountMinSketchesComparison extends Application {
             double maxCMSError;
             double maxCMSCError;
             double maxCMMSError;
+            double maxCSError;
             int iteration = 0;
 
 
@@ -196,16 +212,19 @@ public class CountMinSketchesComparison extends Application {
                 long cmOriginalAbsoluteErrorSum = 0;
                 long cmConservativeAbsoluteErrorSum = 0;
                 long cmMeanAbsoluteErrorSum = 0;
+                long cmCountAbsoluteErrorSum = 0;
 
 
                 // Also keep track of the max error we have seen
                 double cmOriginalMaxError = 0;
                 double cmConservativeMaxError = 0;
                 double cmMeanMaxError = 0;
+                double cmCountMaxError = 0;
 
                 int cmOriginalErrors = 0;
                 int cmConservativeErrors = 0;
                 int cmMeanErrors = 0;
+                int cmCountErrors = 0;
                 double allowableError = epsilonGuarantee * totalCount;
 
                 // Loop through all entries of the hash map (these are all the items we have added to the sketch)
@@ -235,6 +254,13 @@ public class CountMinSketchesComparison extends Application {
                         cmMeanErrors++;
                     }
 
+                    long cmCountAbsoluteError = Math.abs(keyWeight - cmCount.query(set.getKey()));
+                    cmCountAbsoluteErrorSum += cmCountAbsoluteError;
+                    cmCountMaxError = Math.max(cmCountMaxError, cmCountAbsoluteError);
+                    if (cmCountAbsoluteError > allowableError) {
+                        cmCountErrors++;
+                    }
+
                 }
 
 
@@ -250,6 +276,10 @@ public class CountMinSketchesComparison extends Application {
                 double cmMeanPercentageError = 0;
                 double cmMeanFailurePercentage = 0;
 
+                double cmCountAverageError = 0;
+                double cmCountPercentageError = 0;
+                double cmCountFailurePercentage = 0;
+
                 long currentCount = trueFrequencyCounter.items.size();
                 if (currentCount > 0) {
 
@@ -269,9 +299,15 @@ public class CountMinSketchesComparison extends Application {
                     cmMeanMaxError = cmMeanMaxError / totalCount * 100;
                     maxCMMSError = Math.max(cmMeanMaxError, maxCMMSError);
 
+                    cmCountAverageError = (double) cmCountAbsoluteErrorSum / currentCount;
+                    cmCountPercentageError = cmCountAverageError / totalCount * 100;
+                    cmCountMaxError = cmCountMaxError / totalCount * 100;
+                    maxCSError = Math.max(cmCountMaxError, maxCSError);
+
                     cmOriginalFailurePercentage = (double) cmOriginalErrors / currentCount * 100;
                     cmConservativeFailurePercentage = (double) cmConservativeErrors / currentCount * 100;
                     cmMeanFailurePercentage = (double) cmMeanErrors / currentCount * 100;
+                    cmCountFailurePercentage = (double) cmCountErrors / currentCount * 100;
 
                 }
 
@@ -279,18 +315,22 @@ public class CountMinSketchesComparison extends Application {
                 cmOriginalAverageAbsoluteErrorLine.getData().add(new XYChart.Data<>(currentCount, cmOriginalAverageError));
                 cmConservativeAverageAbsoluteErrorLine.getData().add(new XYChart.Data<>(currentCount, cmConservativeAverageError));
                 cmMeanAverageAbsoluteErrorLine.getData().add(new XYChart.Data<>(currentCount, cmMeanAverageError));
+                cmCountAverageAbsoluteErrorLine.getData().add(new XYChart.Data<>(currentCount, cmCountAverageError));
 
                 cmOriginalPercentageErrorLine.getData().add(new XYChart.Data<>(currentCount, cmOriginalPercentageError));
                 cmConservativePercentageErrorLine.getData().add(new XYChart.Data<>(currentCount, cmConservativePercentageError));
                 cmMeanPercentageErrorLine.getData().add(new XYChart.Data<>(currentCount, cmMeanPercentageError));
+                cmCountPercentageErrorLine.getData().add(new XYChart.Data<>(currentCount, cmCountPercentageError));
 
                 cmOriginalMaxErrorLine.getData().add(new XYChart.Data<>(currentCount, cmOriginalMaxError));
                 cmConservativeMaxErrorLine.getData().add(new XYChart.Data<>(currentCount, cmConservativeMaxError));
                 cmMeanMaxErrorLine.getData().add(new XYChart.Data<>(currentCount, cmMeanMaxError));
+                cmCountMaxErrorLine.getData().add(new XYChart.Data<>(currentCount, cmCountMaxError));
 
                 cmOriginalErrorPercentageLine.getData().add(new XYChart.Data<>(currentCount, cmOriginalFailurePercentage));
                 cmConservativeErrorPercentageLine.getData().add(new XYChart.Data<>(currentCount, cmConservativeFailurePercentage));
                 cmMeanErrorPercentageLine.getData().add(new XYChart.Data<>(currentCount, cmMeanFailurePercentage));
+                cmCountErrorPercentageLine.getData().add(new XYChart.Data<>(currentCount, cmCountFailurePercentage));
                 errorPercentageAllowed.getData().add(new XYChart.Data<>(currentCount, percentageGuarantee));
 
                 // Update the sketches with new items
@@ -309,6 +349,7 @@ public class CountMinSketchesComparison extends Application {
                     cmOriginal.update(itemToAdd, itemWeight);
                     cmConservative.update(itemToAdd, itemWeight);
                     cmMean.update(itemToAdd, itemWeight);
+                    cmCount.update(itemToAdd, itemWeight);
 
                 }
                 currentDistinctCount = trueFrequencyCounter.items.size();
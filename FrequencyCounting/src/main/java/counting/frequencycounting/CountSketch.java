@@ -0,0 +1,77 @@
+package counting.frequencycounting;
+
+/**
+ * An implementation of Charikar, Chen and Farach-Colton's Count Sketch. Like the count-min sketch, each row maps an
+ * item to one counter, but each row also gives the item a sign of +1 or -1, and updates add the signed weight. Other
+ * items colliding with an item in a row are as likely to cancel out as to add up, so each row gives an unbiased
+ * estimate and the query takes the median across rows. The error is bounded in terms of the L2-norm of the stream
+ * rather than the L1-norm, which is much smaller for skewed streams. Estimates can be too low as well as too high, and
+ * can be negative.
+ *
+ * Each row's sign is the hash bit just above the bits that choose its column, which is the same as hashing the item
+ * to 2t buckets and folding them onto t signed counters.
+ */
+
+public class CountSketch extends CountMinSketch {
+
+    // Scratch space holding the signs of the item currently being updated, alongside the indexes scratch. Queries use
+    // their thread's scratch space in the hashing instead, so they never write to the sketch
+    private final long[] signs;
+
+    // Basic constructor
+    public CountSketch(int d, int t) {
+        super(d, t);
+        signs = new long[d];
+    }
+
+    // This constructor lets the user choose how the counter in each row is found (see RowHashing)
+    public CountSketch(int d, int t, RowHashing rowHashing) {
+        super(d, t, rowHashing);
+        signs = new long[d];
+    }
+
+    // This constructor also lets the user choose the initial width of the counters (see CounterWidth)
+    public CountSketch(int d, int t, RowHashing rowHashing, CounterWidth counterWidth) {
+        super(d, t, rowHashing, counterWidth);
+        signs = new long[d];
+    }
+
+    // This constructor is used when we want to create a new sketch with the same parameters as an existing sketch
+    public CountSketch(CountSketch cs) {
+        super(cs);
+        signs = new long[d];
+    }
+
+    // This constructor is used to create a new merged count sketch
+    public CountSketch(CountSketch cs, CounterArray counters) {
+        super(cs, counters);
+        signs = new long[d];
+    }
+
+    public void update(long item, long weight) {
+        int[] indexes = hashing.signedCounterIndexes(item, this.indexes, signs);
+        for (int i = 0; i < d; i++) {
+            addToCounter(indexes[i], signs[i] * weight);
+        }
+    }
+
+    // The median of the signed row counters. Each row's sign is replaced by its estimate in place, in the thread's
+    // scratch space, so the median is selected in reused memory and the query allocates nothing
+    @Override
+    public long query(long item) {
+        SketchHashing.Scratch scratch = hashing.scratch();
+        long[] rowEstimates = scratch.values;
+        int[] indexes = hashing.signedCounterIndexes(item, scratch.indexes, rowEstimates);
+        for (int i = 0; i < d; i++) {
+            rowEstimates[i] *= getCounter(indexes[i]);
+        }
+        return MedianSelection.median(rowEstimates, d);
+    }
+
+    public CountSketch merge(CountSketch cs2) {
+
+        CounterArray mergedCounters = super.mergeHelper(cs2);
+
+        return new CountSketch(this, mergedCounters);
+    }
+}
@@ -0,0 +1,401 @@
+package counting.frequencycounting;
+
+import java.util.Arrays;
+
+/** The counters of a count-min sketch matrix, stored in a byte[], short[], int[] or long[] array (see CounterWidth).
+ * Counters are signed, and the smallest value of each narrow type is kept as a marker, so a byte holds -127 to 127 and
+ * a short -32767 to 32767. A counter that outgrows its width is marked, and its value is kept in a small overflow
+ * table instead, so a few heavy items don't make every other counter wider. Only once the overflow table is full does
+ * setting a counter fail, and the sketch then replaces the array with a widened copy.
+ *
+ */
+
+public abstract class CounterArray {
+
+    CounterArray() {
+    }
+
+    static CounterArray create(CounterWidth width, int length) {
+        switch (width) {
+            case BYTE:
+                return new ByteCounters(new byte[length]);
+            case SHORT:
+                return new ShortCounters(new short[length]);
+            case INT:
+                return new IntCounters(new int[length]);
+            default:
+                return new LongCounters(new long[length]);
+        }
+    }
+
+    // Creates the counters of a merged sketch, using the wider of the two widths and widening further if too many sums
+    // of two counters don't fit
+    static CounterArray sum(CounterArray counters1, CounterArray counters2) {
+        CounterArray merged = create(CounterWidth.widest(counters1.getWidth(), counters2.getWidth()),
+                counters1.length());
+        for (int i = 0; i < merged.length(); i++) {
+            long value = counters1.get(i) + counters2.get(i);
+            while (!merged.trySet(i, value)) {
+                merged = merged.widen();
+            }
+        }
+        return merged;
+    }
+
+    public abstract long get(int index);
+
+    public abstract int length();
+
+    public abstract CounterWidth getWidth();
+
+    public long getBytesUsed() {
+        return (long) length() * getWidth().getBytes();
+    }
+
+    // Sets a counter, returning false and leaving the counter unchanged if the value doesn't fit in its width and the
+    // overflow table is full
+    abstract boolean trySet(int index, long value);
+
+    // Copies the counters into the next wider type
+    abstract CounterArray widen();
+
+    // Sets every counter to zero, keeping the width
+    abstract void clear();
+
+    // The underlying array when the counters are longs, so the sketch can read and add to them directly. Narrower
+    // counters return null, as they have to be checked for overflow
+    long[] longArray() {
+        return null;
+    }
+
+    // The most counters of an array that can be kept in its overflow table. With the table at most half full, this
+    // keeps it smaller than widening even byte counters would make the array
+    private static int overflowLimit(int length) {
+        return Math.max(8, length >>> 6);
+    }
+
+    private static final class ByteCounters extends CounterArray {
+
+        // Marks a counter whose value is in the overflow table
+        private static final byte OVERFLOWED = Byte.MIN_VALUE;
+
+        private final byte[] counters;
+        private OverflowTable overflow;
+
+        ByteCounters(byte[] counters) {
+            this.counters = counters;
+        }
+
+        public long get(int index) {
+            byte counter = counters[index];
+            return counter != OVERFLOWED ? counter : overflow.get(index);
+        }
+
+        public int length() {
+            return counters.length;
+        }
+
+        public CounterWidth getWidth() {
+            return CounterWidth.BYTE;
+        }
+
+        @Override
+        public long getBytesUsed() {
+            return super.getBytesUsed() + OverflowTable.bytesUsed(overflow);
+        }
+
+        boolean trySet(int index, long value) {
+            if (counters[index] == OVERFLOWED) {
+                overflow.put(index, value);
+            }
+            else if (value == (byte) value && value != OVERFLOWED) {
+                counters[index] = (byte) value;
+            }
+            else {
+                if (overflow == null) {
+                    overflow = new OverflowTable();
+                }
+                if (overflow.size() >= overflowLimit(counters.length)) {
+                    return false;
+                }
+                overflow.put(index, value);
+                counters[index] = OVERFLOWED;
+            }
+            return true;
+        }
+
+        // The cells of counters in the overflow table are copied with the marker, which is an ordinary value in the
+        // wider type, and then set again, mostly to values that now fit
+        CounterArray widen() {
+            short[] widened = new short[counters.length];
+            for (int i = 0; i < counters.length; i++) {
+                widened[i] = counters[i];
+            }
+            ShortCounters wider = new ShortCounters(widened);
+            if (overflow != null) {
+                overflow.copyTo(wider);
+            }
+            return wider;
+        }
+
+        void clear() {
+            Arrays.fill(counters, (byte) 0);
+            overflow = null;
+        }
+    }
+
+    private static final class ShortCounters extends CounterArray {
+
+        // Marks a counter whose value is in the overflow table
+        private static final short OVERFLOWED = Short.MIN_VALUE;
+
+        private final short[] counters;
+        private OverflowTable overflow;
+
+        ShortCounters(short[] counters) {
+            this.counters = counters;
+        }
+
+        public long get(int index) {
+            short counter = counters[index];
+            return counter != OVERFLOWED ? counter : overflow.get(index);
+        }
+
+        public int length() {
+            return counters.length;
+        }
+
+        public CounterWidth getWidth() {
+            return CounterWidth.SHORT;
+        }
+
+        @Override
+        public long getBytesUsed() {
+            return super.getBytesUsed() + OverflowTable.bytesUsed(overflow);
+        }
+
+        boolean trySet(int index, long value) {
+            if (counters[index] == OVERFLOWED) {
+                overflow.put(index, value);
+            }
+            else if (value == (short) value && value != OVERFLOWED) {
+                counters[index] = (short) value;
+            }
+            else {
+                if (overflow == null) {
+                    overflow = new OverflowTable();
+                }
+                if (overflow.size() >= overflowLimit(counters.length)) {
+                    return false;
+                }
+                overflow.put(index, value);
+                counters[index] = OVERFLOWED;
+            }
+            return true;
+        }
+
+        // The cells of counters in the overflow table are copied with the marker, which is an ordinary value in the
+        // wider type, and then set again, mostly to values that now fit
+        CounterArray widen() {
+            int[] widened = new int[counters.length];
+            for (int i = 0; i < counters.length; i++) {
+                widened[i] = counters[i];
+            }
+            IntCounters wider = new IntCounters(widened);
+            if (overflow != null) {
+                overflow.copyTo(wider);
+            }
+            return wider;
+        }
+
+        void clear() {
+            Arrays.fill(counters, (short) 0);
+            overflow = null;
+        }
+    }
+
+    private static final class IntCounters extends CounterArray {
+
+        // Marks a counter whose value is in the overflow table
+        private static final int OVERFLOWED = Integer.MIN_VALUE;
+
+        private final int[] counters;
+        private OverflowTable overflow;
+
+        IntCounters(int[] counters) {
+            this.counters = counters;
+        }
+
+        public long get(int index) {
+            int counter = counters[index];
+            return counter != OVERFLOWED ? counter : overflow.get(index);
+        }
+
+        public int length() {
+            return counters.length;
+        }
+
+        public CounterWidth getWidth() {
+            return CounterWidth.INT;
+        }
+
+        @Override
+        public long getBytesUsed() {
+            return super.getBytesUsed() + OverflowTable.bytesUsed(overflow);
+        }
+
+        boolean trySet(int index, long value) {
+            if (counters[index] == OVERFLOWED) {
+                overflow.put(index, value);
+            }
+            else if (value == (int) value && value != OVERFLOWED) {
+                counters[index] = (int) value;
+            }
+            else {
+                if (overflow == null) {
+                    overflow = new OverflowTable();
+                }
+                if (overflow.size() >= overflowLimit(counters.length)) {
+                    return false;
+                }
+                overflow.put(index, value);
+                counters[index] = OVERFLOWED;
+            }
+            return true;
+        }
+
+        // Every counter fits in a long, so the overflow table isn't needed after widening
+        CounterArray widen() {
+            long[] widened = new long[counters.length];
+            for (int i = 0; i < counters.length; i++) {
+                widened[i] = get(i);
+            }
+            return new LongCounters(widened);
+        }
+
+        void clear() {
+            Arrays.fill(counters, 0);
+            overflow = null;
+        }
+    }
+    private static final class LongCounters extends CounterArray {
+
+        private final long[] counters;
+
+        LongCounters(long[] counters) {
+            this.counters = counters;
+        }
+
+        public long get(int index) {
+            return counters[index];
+        }
+
+        public int length() {
+            return counters.length;
+        }
+
+        public CounterWidth getWidth() {
+            return CounterWidth.LONG;
+        }
+
+        // A long counter can hold any value, so it is never widened
+        boolean trySet(int index, long value) {
+            counters[index] = value;
+            return true;
+        }
+
+        CounterArray widen() {
+            return this;
+        }
+
+        void clear() {
+            Arrays.fill(counters, 0L);
+        }
+
+        @Override
+        long[] longArray() {
+            return counters;
+        }
+    }
+
+    // The values of the counters that don't fit in their array, by position in the array. It is an open addressing hash
+    // table with linear probing, kept at most half full. Counters are never removed, only reset all at once by clear()
+    private static final class OverflowTable {
+
+        private static final int EMPTY = -1;
+
+        // A position is hashed to a slot by multiplying it by 2^32 / golden ratio and keeping the top bits
+        private int[] indexes;
+        private long[] values;
+        private int shift;
+        private int size;
+
+        private OverflowTable() {
+            allocate(16);
+        }
+
+        private void allocate(int capacity) {
+            indexes = new int[capacity];
+            Arrays.fill(indexes, EMPTY);
+            values = new long[capacity];
+            shift = Integer.numberOfLeadingZeros(capacity) + 1;
+        }
+
+        private static long bytesUsed(OverflowTable overflow) {
+            return overflow == null ? 0 : (long) overflow.indexes.length * (Integer.BYTES + Long.BYTES);
+        }
+
+        private int size() {
+            return size;
+        }
+
+        private int slot(int index) {
+            int mask = indexes.length - 1;
+            int slot = (index * 0x9E3779B9) >>> shift;
+            while (indexes[slot] != EMPTY && indexes[slot] != index) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private long get(int index) {
+            return values[slot(index)];
+        }
+
+        private void put(int index, long value) {
+            int slot = slot(index);
+            if (indexes[slot] == EMPTY) {
+                if (2 * (size + 1) > indexes.length) {
+                    grow();
+                    slot = slot(index);
+                }
+                indexes[slot] = index;
+                size++;
+            }
+            values[slot] = value;
+        }
+
+        private void grow() {
+            int[] oldIndexes = indexes;
+            long[] oldValues = values;
+            allocate(oldIndexes.length * 2);
+            for (int i = 0; i < oldIndexes.length; i++) {
+                if (oldIndexes[i] != EMPTY) {
+                    int slot = slot(oldIndexes[i]);
+                    indexes[slot] = oldIndexes[i];
+                    values[slot] = oldValues[i];
+                }
+            }
+        }
+
+        // Sets every counter in the table in a wider array. The wider array has the same length, and so the same limit,
+        // so this never fails
+        private void copyTo(CounterArray wider) {
+            for (int i = 0; i < indexes.length; i++) {
+                if (indexes[i] != EMPTY) {
+                    wider.trySet(indexes[i], values[i]);
+                }
+            }
+        }
+    }
+}
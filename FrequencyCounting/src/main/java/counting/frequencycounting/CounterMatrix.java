@@ -0,0 +1,41 @@
+package counting.frequencycounting;
+
+/** A read-only view of the d x t matrix of a count-min sketch. The view reads the sketch's counters directly, so it
+ * always reflects the sketch's latest updates and creating one costs nothing.
+ *
+ */
+
+public class CounterMatrix {
+
+    private final CountMinSketch cms;
+
+    CounterMatrix(CountMinSketch cms) {
+        this.cms = cms;
+    }
+
+    public long get(int row, int column) {
+        if (row < 0 || row >= cms.getD() || column < 0 || column >= cms.getT()) {
+            throw new RuntimeException("Position (" + row + ", " + column + ") lies outside the matrix");
+        }
+        return cms.getCounter(row, column);
+    }
+
+    public int getRows() {
+        return cms.getD();
+    }
+
+    public int getColumns() {
+        return cms.getT();
+    }
+
+    // Copies the matrix into a two-dimensional array
+    public long[][] toArray() {
+        long[][] matrix = new long[cms.getD()][cms.getT()];
+        for (int i = 0; i < cms.getD(); i++) {
+            for (int j = 0; j < cms.getT(); j++) {
+                matrix[i][j] = cms.getCounter(i, j);
+            }
+        }
+        return matrix;
+    }
+}
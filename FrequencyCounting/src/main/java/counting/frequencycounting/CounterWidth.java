@@ -0,0 +1,35 @@
+package counting.frequencycounting;
+
+/** The number of bits a count-min sketch starts with for each counter in its matrix. Counters are signed, and the
+ * smallest value of each narrow type is reserved, so a byte counter holds -127 to 127, a short -32767 to 32767 and an
+ * int -(2^31 - 1) to 2^31 - 1. A counter that outgrows its width is kept in a small overflow table (see CounterArray),
+ * and only when that fills up is the whole matrix promoted to the next wider type (byte, then short, then int, then
+ * long), so a sketch never loses a count by starting narrow. While the counters of most columns fit, narrow counters
+ * let the same memory hold up to 8 times as many columns.
+ *
+ */
+
+public enum CounterWidth {
+    BYTE(8),
+    SHORT(16),
+    INT(32),
+    LONG(64);
+
+    private final int bits;
+
+    CounterWidth(int bits) {
+        this.bits = bits;
+    }
+
+    public int getBits() {
+        return bits;
+    }
+
+    public int getBytes() {
+        return bits / 8;
+    }
+
+    public static CounterWidth widest(CounterWidth width1, CounterWidth width2) {
+        return width1.compareTo(width2) >= 0 ? width1 : width2;
+    }
+}
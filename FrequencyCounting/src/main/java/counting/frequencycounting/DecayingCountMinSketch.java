@@ -0,0 +1,100 @@
+package counting.frequencycounting;
+
+/** A count-min sketch in which every weight decays exponentially with age, halving every halfLifeMillis. Recent items
+ * therefore dominate the estimates, and the sketch never needs to be thrown away or rebuilt to forget old items.
+ *
+ * Decay is applied lazily. Each counter stores its value along with the time it was last brought up to date, and it
+ * is only scaled down to the current time when an update or query touches it. Memory stays at two numbers per counter,
+ * and every update or query costs d counter adjustments, however long the sketch has been running.
+ *
+ * The counters are doubles, since decayed weights are fractional. The positions of an item's counters are found by the
+ * same SketchHashing as in CountMinSketch.
+ *
+ */
+
+public class DecayingCountMinSketch {
+
+    private final SketchHashing hashing;
+    private final double decayPerMilli;
+
+    // The value of each counter and the time it was last decayed to, stored row by row as in CountMinSketch
+    private final double[] values;
+    private final long[] timestamps;
+
+    // Scratch space holding the counter positions of the item being updated or queried. Queries decay the counters
+    // they read, so they write to the sketch anyway
+    private final int[] indexes;
+
+    // Basic constructor. t is rounded up to the next power of two
+    public DecayingCountMinSketch(int d, int t, double halfLifeMillis) {
+        this(d, t, RowHashing.INDEPENDENT, halfLifeMillis);
+    }
+
+    // This constructor lets the user choose how the counter in each row is found (see RowHashing)
+    public DecayingCountMinSketch(int d, int t, RowHashing rowHashing, double halfLifeMillis) {
+        if (!(halfLifeMillis > 0)) {
+            throw new RuntimeException("The half-life must be positive");
+        }
+        hashing = new SketchHashing(d, t, rowHashing);
+        decayPerMilli = Math.log(2) / halfLifeMillis;
+        values = new double[hashing.size()];
+        timestamps = new long[values.length];
+        indexes = new int[hashing.d];
+    }
+
+    // Adds the weight to the item at the current time
+    public void update(long item, double weight) {
+        update(item, weight, System.currentTimeMillis());
+    }
+
+    // Decays each of the item's counters to timeMillis, then adds the weight. Times should not go backwards, but if
+    // they do, counters that are already newer are not decayed back up
+    public void update(long item, double weight, long timeMillis) {
+        int[] indexes = hashing.counterIndexes(item, this.indexes);
+        for (int index : indexes) {
+            values[index] = decayedValue(index, timeMillis) + weight;
+        }
+    }
+
+    // Estimates the item's decayed weight at the current time
+    public double query(long item) {
+        return query(item, System.currentTimeMillis());
+    }
+
+    // Estimates the item's decayed weight at timeMillis. The counters read are brought up to date along the way
+    public double query(long item, long timeMillis) {
+        double minimum = Double.MAX_VALUE;
+        int[] indexes = hashing.counterIndexes(item, this.indexes);
+        for (int index : indexes) {
+            minimum = Math.min(minimum, decayedValue(index, timeMillis));
+        }
+        return minimum;
+    }
+
+    public int getD() {
+        return hashing.d;
+    }
+
+    public int getT() {
+        return hashing.t;
+    }
+
+    // The time taken for a weight to halve
+    public double getHalfLifeMillis() {
+        return Math.log(2) / decayPerMilli;
+    }
+
+    public long getBytesUsed() {
+        return 16L * values.length;
+    }
+
+    // Scales the counter down to timeMillis, records the new time, and returns the scaled value
+    private double decayedValue(int index, long timeMillis) {
+        long elapsed = timeMillis - timestamps[index];
+        if (elapsed > 0) {
+            values[index] *= Math.exp(-decayPerMilli * elapsed);
+            timestamps[index] = timeMillis;
+        }
+        return values[index];
+    }
+}
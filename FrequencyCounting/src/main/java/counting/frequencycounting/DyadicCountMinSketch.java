@@ -0,0 +1,267 @@
+package counting.frequencycounting;
+
+/** A hierarchy of count-min sketches over the numeric keys 0 to 2^logUniverse - 1, which answers range queries ("how
+ * much weight was added to keys lo to hi") and approximate quantiles with O(logUniverse) point queries instead of one
+ * point query per key in the range.
+ *
+ * Level j of the hierarchy counts the dyadic interval key >>> j, i.e. the block of 2^j keys the key falls in, so
+ * level 0 counts the keys themselves and level logUniverse counts everything. An update adds its weight to one
+ * interval on every level. Any range is the union of at most two intervals per level, and the quantile search walks
+ * down from the top level choosing the left or right half at each step.
+ *
+ * The lower levels are count-min sketch originals with the same matrix size, each with hash functions of its own, so
+ * that keys which collide on one level are no more likely than any others to collide on the next. Higher up, a level
+ * has so few intervals that counting them exactly takes no more space than a sketch, so every level with at most
+ * d * t intervals is counted exactly instead. These exact levels are stored one after the other in a single array.
+ *
+ */
+
+public class DyadicCountMinSketch {
+
+    private final int logUniverse;
+
+    // sketchLevels[j] counts the intervals of level j for j below the first exact level
+    private final CountMinSketchOriginal[] sketchLevels;
+
+    // The exact counts of levels firstExactLevel to logUniverse. Level j starts at exactOffsets[j - firstExactLevel]
+    private final int firstExactLevel;
+    private final long[] exactCounts;
+    private final int[] exactOffsets;
+
+    private long totalWeight = 0;
+
+    // Basic constructor. Keys must lie between 0 and 2^logUniverse - 1, and each sketch level has a d x t matrix
+    public DyadicCountMinSketch(int logUniverse, int d, int t) {
+        this(logUniverse, d, t, RowHashing.INDEPENDENT);
+    }
+
+    // This constructor lets the user choose how the counter in each row is found (see RowHashing)
+    public DyadicCountMinSketch(int logUniverse, int d, int t, RowHashing rowHashing) {
+        this(logUniverse, d, t, rowHashing, CounterWidth.LONG);
+    }
+
+    // This constructor also lets the user choose the initial width of the counters (see CounterWidth)
+    public DyadicCountMinSketch(int logUniverse, int d, int t, RowHashing rowHashing, CounterWidth counterWidth) {
+        this(logUniverse, createSketchLevels(logUniverse, new CountMinSketchOriginal(d, t, rowHashing, counterWidth)));
+    }
+
+    // This constructor is used when we want to create a new sketch with the same parameters as an existing sketch, e.g.
+    // so that the two can be merged
+    public DyadicCountMinSketch(DyadicCountMinSketch dcms) {
+        this(dcms.logUniverse, copySketchLevels(dcms.sketchLevels));
+    }
+
+    // Sets up the exact levels above the given sketch levels
+    private DyadicCountMinSketch(int logUniverse, CountMinSketchOriginal[] sketchLevels) {
+        this.logUniverse = logUniverse;
+        this.sketchLevels = sketchLevels;
+        firstExactLevel = sketchLevels.length;
+
+        exactOffsets = new int[logUniverse - firstExactLevel + 1];
+        long exactLength = 0;
+        for (int j = firstExactLevel; j <= logUniverse; j++) {
+            exactOffsets[j - firstExactLevel] = (int) exactLength;
+            exactLength += 1L << (logUniverse - j);
+        }
+        if (exactLength > Integer.MAX_VALUE - 8) {
+            throw new RuntimeException("The exact levels are too large to be stored in one array");
+        }
+        exactCounts = new long[(int) exactLength];
+    }
+
+    // Creates a sketch for every level with more than d * t intervals, with the matrix size, row hashing and counter
+    // width of the sketch given for level 0 but new hash functions. The exact levels above then hold fewer than
+    // 2 * d * t counters in total
+    private static CountMinSketchOriginal[] createSketchLevels(int logUniverse, CountMinSketchOriginal levelZero) {
+        if (logUniverse < 1 || logUniverse > 62) {
+            throw new RuntimeException("logUniverse must be between 1 and 62");
+        }
+
+        long countersPerSketch = (long) levelZero.getD() * levelZero.getT();
+        int numberOfSketchLevels = 0;
+        while (numberOfSketchLevels <= logUniverse && 1L << (logUniverse - numberOfSketchLevels) > countersPerSketch) {
+            numberOfSketchLevels++;
+        }
+
+        CountMinSketchOriginal[] sketchLevels = new CountMinSketchOriginal[numberOfSketchLevels];
+        for (int j = 0; j < numberOfSketchLevels; j++) {
+            sketchLevels[j] = j == 0 ? levelZero : new CountMinSketchOriginal(levelZero.getD(), levelZero.getT(),
+                    levelZero.getRowHashing(), levelZero.getCounterWidth());
+        }
+        return sketchLevels;
+    }
+
+    // Creates empty sketch levels with the same hash functions as the given ones
+    private static CountMinSketchOriginal[] copySketchLevels(CountMinSketchOriginal[] sketchLevels) {
+        CountMinSketchOriginal[] copies = new CountMinSketchOriginal[sketchLevels.length];
+        for (int j = 0; j < sketchLevels.length; j++) {
+            copies[j] = new CountMinSketchOriginal(sketchLevels[j]);
+        }
+        return copies;
+    }
+
+    // Adds the weight to the key's interval on every level, in a single pass up the hierarchy
+    public void update(long key, long weight) {
+        checkKey(key);
+        for (int j = 0; j < firstExactLevel; j++) {
+            sketchLevels[j].update(key >>> j, weight);
+        }
+        for (int j = firstExactLevel; j <= logUniverse; j++) {
+            exactCounts[exactOffsets[j - firstExactLevel] + (int) (key >>> j)] += weight;
+        }
+        totalWeight += weight;
+    }
+
+    // Adds the weight to every key in keys[offset] to keys[offset + length - 1]. The batch is applied level by level
+    // rather than key by key, so each level's matrix and hash functions stay in cache while the whole batch goes
+    // through them. Every key is checked before any counter changes
+    public void update(long[] keys, int offset, int length, long weight) {
+        if (offset < 0 || length < 0 || offset > keys.length - length) {
+            throw new RuntimeException("The batch lies outside the bounds of the keys array");
+        }
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            checkKey(keys[i]);
+        }
+
+        for (int j = 0; j < firstExactLevel; j++) {
+            CountMinSketchOriginal level = sketchLevels[j];
+            for (int i = offset; i < end; i++) {
+                level.update(keys[i] >>> j, weight);
+            }
+        }
+        for (int j = firstExactLevel; j <= logUniverse; j++) {
+            int levelOffset = exactOffsets[j - firstExactLevel];
+            for (int i = offset; i < end; i++) {
+                exactCounts[levelOffset + (int) (keys[i] >>> j)] += weight;
+            }
+        }
+        totalWeight += weight * length;
+    }
+
+    // The estimated weight of a single key
+    public long query(long key) {
+        checkKey(key);
+        return intervalCount(0, key);
+    }
+
+    // The estimated total weight of the keys from lo to hi inclusive. The range is split into dyadic intervals from the
+    // bottom level up: whenever an end of the range isn't aligned to the next level's intervals, the interval at that
+    // end is counted on this level and the end moves inwards
+    public long rangeQuery(long lo, long hi) {
+        checkKey(lo);
+        checkKey(hi);
+        if (lo > hi) {
+            throw new RuntimeException("The start of the range must not be after its end");
+        }
+
+        long sum = 0;
+        long start = lo;
+        long end = hi + 1;
+        for (int j = 0; start < end; j++) {
+            if ((start & 1) == 1) {
+                sum += intervalCount(j, start);
+                start++;
+            }
+            if ((end & 1) == 1) {
+                end--;
+                sum += intervalCount(j, end);
+            }
+            start >>>= 1;
+            end >>>= 1;
+        }
+        return sum;
+    }
+
+    // The estimated weight of the keys smaller than key. key can be 2^logUniverse, giving the total weight
+    public long rank(long key) {
+        if (key < 0 || key > 1L << logUniverse) {
+            throw new RuntimeException("The key must lie between 0 and 2^logUniverse");
+        }
+        return key == 0 ? 0 : rangeQuery(0, key - 1);
+    }
+
+    // The smallest key whose estimated rank plus weight exceeds the given fraction of the total weight, found by
+    // walking down from the top level and moving into the right half of the interval whenever the left half holds too
+    // little. Overestimated counts make the answer too small rather than too large
+    public long quantile(double fraction) {
+        if (fraction < 0 || fraction > 1) {
+            throw new RuntimeException("The fraction must lie between 0 and 1");
+        }
+        long remaining = Math.min((long) (fraction * totalWeight), totalWeight - 1);
+
+        long interval = 0;
+        for (int j = logUniverse - 1; j >= 0; j--) {
+            long left = interval << 1;
+            long leftCount = intervalCount(j, left);
+            if (remaining < leftCount) {
+                interval = left;
+            }
+            else {
+                remaining -= leftCount;
+                interval = left + 1;
+            }
+        }
+        return interval;
+    }
+
+    // Merges two dyadic sketches level by level. Their sketch levels must have the same matrix size and hash functions,
+    // which is the case when one was created from the other with the copy constructor
+    public DyadicCountMinSketch merge(DyadicCountMinSketch dcms2) {
+        if (this.logUniverse != dcms2.logUniverse || this.firstExactLevel != dcms2.firstExactLevel) {
+            throw new RuntimeException(
+                    "To merge dyadic count-min sketches, the universe and matrix size have to be the same");
+        }
+
+        CountMinSketchOriginal[] mergedLevels = new CountMinSketchOriginal[firstExactLevel];
+        for (int j = 0; j < firstExactLevel; j++) {
+            mergedLevels[j] = this.sketchLevels[j].merge(dcms2.sketchLevels[j]);
+        }
+
+        DyadicCountMinSketch merged = new DyadicCountMinSketch(logUniverse, mergedLevels);
+        for (int i = 0; i < exactCounts.length; i++) {
+            merged.exactCounts[i] = this.exactCounts[i] + dcms2.exactCounts[i];
+        }
+        merged.totalWeight = this.totalWeight + dcms2.totalWeight;
+        return merged;
+    }
+
+    public int getLogUniverse() {
+        return logUniverse;
+    }
+
+    // The number of levels stored as count-min sketches. The levels above these are counted exactly
+    public int getSketchLevels() {
+        return firstExactLevel;
+    }
+
+    // The count-min sketch of one of the sketch levels
+    public CountMinSketchOriginal getLevel(int level) {
+        return sketchLevels[level];
+    }
+
+    public long getTotalWeight() {
+        return totalWeight;
+    }
+
+    public long getBytesUsed() {
+        long bytesUsed = 8L * exactCounts.length;
+        for (CountMinSketchOriginal level : sketchLevels) {
+            bytesUsed += level.getBytesUsed();
+        }
+        return bytesUsed;
+    }
+
+    private long intervalCount(int level, long interval) {
+        if (level < firstExactLevel) {
+            return sketchLevels[level].query(interval);
+        }
+        return exactCounts[exactOffsets[level - firstExactLevel] + (int) interval];
+    }
+
+    private void checkKey(long key) {
+        if (key < 0 || key >>> logUniverse != 0) {
+            throw new RuntimeException("The key must lie between 0 and 2^logUniverse - 1");
+        }
+    }
+}
@@ -9,17 +9,37 @@ import java.util.Random;
 
 public abstract class Hash {
 
-    private final long p = 887213367811L;
+    // The prime used by the polynomial hash functions, and the Mersenne prime 2^61 - 1 used by the faster hash functions
+    static final long DEFAULT_PRIME = 887213367811L;
+    static final long MERSENNE_PRIME = (1L << 61) - 1;
+
+    private final long p;
     private final long a;
     private final long b;
 
     // The constructor generates two random parameters between 0 and p
     public Hash() {
+        this(DEFAULT_PRIME);
+    }
+
+    // This constructor lets child classes work modulo a different prime, generating two random parameters below it
+    protected Hash(long p) {
         Random rand = new Random();
+        this.p = p;
         this.a = rand.nextLong(p);
         this.b = rand.nextLong(p);
     }
 
+    // This constructor lets child classes work modulo a different prime with known parameters
+    protected Hash(long p, long a, long b) {
+        if (a < 0 || a >= p || b < 0 || b >= p) {
+            throw new RuntimeException("Hash function parameters must lie between 0 and p");
+        }
+        this.p = p;
+        this.a = a;
+        this.b = b;
+    }
+
     public abstract long hashFunction (long x);
 
     public long getPrime() {
@@ -0,0 +1,213 @@
+package counting.frequencycounting;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+
+/** Tracks the k items with the largest estimated counts in a count-min sketch. Every update is passed on to the
+ * sketch, and the item's new estimate is then offered to a min-heap of at most k candidates, so the candidate with the
+ * smallest estimate is always at index 0. An item that isn't a candidate replaces that smallest candidate if its
+ * estimate is larger. This means the heaviest items can be read in O(k), without scanning every item seen.
+ *
+ * Candidates are found through an open-addressed hash table mapping each item to its position in the heap. The
+ * candidates' estimates are those from their most recent updates.
+ *
+ */
+
+public class HeavyHitters {
+
+    // 2^64 divided by the golden ratio, used to spread items across the table (Fibonacci hashing)
+    private static final long GOLDEN_RATIO = 0x9E3779B97F4A7C15L;
+
+    private final CountMinSketch cms;
+    private final int k;
+
+    // The heap: the item, estimate and table slot of each candidate
+    private final long[] items;
+    private final long[] estimates;
+    private final int[] slots;
+
+    // The table: each slot holds the heap position of a candidate plus one, or 0 if it is empty
+    private final int[] table;
+    private final int tableMask;
+    private final int tableShift;
+    private int size;
+
+    public HeavyHitters(CountMinSketch cms, int k) {
+        if (k < 1) {
+            throw new RuntimeException("k has to be at least 1");
+        }
+        this.cms = cms;
+        this.k = k;
+        items = new long[k];
+        estimates = new long[k];
+        slots = new int[k];
+
+        // Keep the table's load factor at or below 0.5 so that probe sequences stay short
+        int tableBits = Math.max(1, 64 - Long.numberOfLeadingZeros(2L * k - 1));
+        if (tableBits > 30) {
+            throw new RuntimeException("k is too large");
+        }
+        table = new int[1 << tableBits];
+        tableMask = table.length - 1;
+        tableShift = 64 - tableBits;
+    }
+
+    // Updates the sketch, then offers the item's new estimate to the candidates
+    public void update(long item, long weight) {
+        cms.update(item, weight);
+        offer(item, cms.query(item));
+    }
+
+    // The estimate of a candidate from its most recent update, or the sketch's estimate if it isn't a candidate
+    public long query(long item) {
+        int slot = find(item);
+        return slot >= 0 ? estimates[table[slot] - 1] : cms.query(item);
+    }
+
+    public boolean isCandidate(long item) {
+        return find(item) >= 0;
+    }
+
+    // The candidates, in no particular order. getEstimates() holds their estimates in the same order
+    public long[] getItems() {
+        return Arrays.copyOf(items, size);
+    }
+
+    public long[] getEstimates() {
+        return Arrays.copyOf(estimates, size);
+    }
+
+    // The candidates and their estimates, from the largest estimate to the smallest
+    public LinkedHashMap<Long, Long> getTopK() {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (i, j) -> Long.compare(estimates[j], estimates[i]));
+
+        LinkedHashMap<Long, Long> topK = new LinkedHashMap<>();
+        for (int position : order) {
+            topK.put(items[position], estimates[position]);
+        }
+        return topK;
+    }
+
+    // The smallest estimate among the candidates. Once there are k candidates, an item needs a larger estimate to join
+    public long getMinimumEstimate() {
+        return size == 0 ? 0 : estimates[0];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getK() {
+        return k;
+    }
+
+    public CountMinSketch getSketch() {
+        return cms;
+    }
+
+    private void offer(long item, long estimate) {
+        int slot = find(item);
+        if (slot >= 0) {
+            // The estimate of a count-mean-min sketch can fall as well as rise, so the candidate may move either way
+            int position = table[slot] - 1;
+            estimates[position] = estimate;
+            siftDown(siftUp(position));
+        }
+        else if (size < k) {
+            place(size, item, estimate, tableInsert(item));
+            siftUp(size++);
+        }
+        else if (estimate > estimates[0]) {
+            tableRemove(slots[0]);
+            place(0, item, estimate, tableInsert(item));
+            siftDown(0);
+        }
+    }
+
+    private void place(int position, long item, long estimate, int slot) {
+        items[position] = item;
+        estimates[position] = estimate;
+        slots[position] = slot;
+        table[slot] = position + 1;
+    }
+
+    private int slotFor(long item) {
+        return (int) ((item * GOLDEN_RATIO) >>> tableShift);
+    }
+
+    // Returns the slot holding the item, or -1 if it isn't a candidate
+    private int find(long item) {
+        int slot = slotFor(item);
+        while (table[slot] != 0) {
+            if (items[table[slot] - 1] == item) {
+                return slot;
+            }
+            slot = (slot + 1) & tableMask;
+        }
+        return -1;
+    }
+
+    // Returns an empty slot for the item. The caller fills it in with place()
+    private int tableInsert(long item) {
+        int slot = slotFor(item);
+        while (table[slot] != 0) {
+            slot = (slot + 1) & tableMask;
+        }
+        return slot;
+    }
+
+    // Empties a slot, shifting later members of the probe sequence back so no tombstones are needed
+    private void tableRemove(int slot) {
+        int next = (slot + 1) & tableMask;
+        while (table[next] != 0) {
+            int home = slotFor(items[table[next] - 1]);
+            // Move the entry back if its home slot doesn't lie cyclically within (slot, next]
+            if (((next - home) & tableMask) >= ((next - slot) & tableMask)) {
+                table[slot] = table[next];
+                slots[table[slot] - 1] = slot;
+                slot = next;
+            }
+            next = (next + 1) & tableMask;
+        }
+        table[slot] = 0;
+    }
+
+    private int siftUp(int position) {
+        long item = items[position];
+        long estimate = estimates[position];
+        int slot = slots[position];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (estimates[parent] <= estimate) {
+                break;
+            }
+            place(position, items[parent], estimates[parent], slots[parent]);
+            position = parent;
+        }
+        place(position, item, estimate, slot);
+        return position;
+    }
+
+    private void siftDown(int position) {
+        long item = items[position];
+        long estimate = estimates[position];
+        int slot = slots[position];
+        int half = size >>> 1;
+        while (position < half) {
+            int child = 2 * position + 1;
+            if (child + 1 < size && estimates[child + 1] < estimates[child]) {
+                child++;
+            }
+            if (estimate <= estimates[child]) {
+                break;
+            }
+            place(position, items[child], estimates[child], slots[child]);
+            position = child;
+        }
+        place(position, item, estimate, slot);
+    }
+}
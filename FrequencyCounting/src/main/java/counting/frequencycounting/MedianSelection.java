@@ -0,0 +1,103 @@
+package counting.frequencycounting;
+
+/** Finds order statistics of the first values of an array in place, without allocating any memory. Small arrays (such
+ * as the d row estimates of a sketch) are insertion sorted, and larger ones use quickselect with a median-of-three
+ * pivot. The order of the values is changed.
+ *
+ */
+
+final class MedianSelection {
+
+    private static final int INSERTION_SORT_LENGTH = 16;
+
+    private MedianSelection() {
+    }
+
+    // Returns the value that would be at index rank if values[0..length) were sorted, and moves it there. Every value
+    // before it is then no larger, and every value after it no smaller
+    static long select(long[] values, int length, int rank) {
+        if (rank < 0 || rank >= length) {
+            throw new RuntimeException("The rank has to lie between 0 and length - 1");
+        }
+        int low = 0;
+        int high = length - 1;
+        while (high - low >= INSERTION_SORT_LENGTH) {
+            int pivotIndex = partition(values, low, high);
+            if (pivotIndex == rank) {
+                return values[rank];
+            }
+            if (pivotIndex < rank) {
+                low = pivotIndex + 1;
+            }
+            else {
+                high = pivotIndex - 1;
+            }
+        }
+        insertionSort(values, low, high);
+        return values[rank];
+    }
+
+    // The upper median (the larger of the two middle values when length is even)
+    static long upperMedian(long[] values, int length) {
+        return select(values, length, length / 2);
+    }
+
+    // The median, taking the mean of the two middle values when length is even
+    static long median(long[] values, int length) {
+        long upper = select(values, length, length / 2);
+        if ((length & 1) == 1) {
+            return upper;
+        }
+
+        // After selection, the lower middle value is the largest of the values before the upper one
+        long lower = values[0];
+        for (int i = 1; i < length / 2; i++) {
+            lower = Math.max(lower, values[i]);
+        }
+        return lower + (upper - lower) / 2;
+    }
+
+    private static void insertionSort(long[] values, int low, int high) {
+        for (int i = low + 1; i <= high; i++) {
+            long value = values[i];
+            int j = i - 1;
+            while (j >= low && values[j] > value) {
+                values[j + 1] = values[j];
+                j--;
+            }
+            values[j + 1] = value;
+        }
+    }
+
+    // Partitions values[low..high] around the median of its first, middle and last values, returning the pivot's index
+    private static int partition(long[] values, int low, int high) {
+        int middle = (low + high) >>> 1;
+        if (values[middle] < values[low]) {
+            swap(values, middle, low);
+        }
+        if (values[high] < values[low]) {
+            swap(values, high, low);
+        }
+        if (values[high] < values[middle]) {
+            swap(values, high, middle);
+        }
+
+        // The median of the three is now at middle. Move it to the end and partition the rest around it
+        swap(values, middle, high);
+        long pivot = values[high];
+        int store = low;
+        for (int i = low; i < high; i++) {
+            if (values[i] < pivot) {
+                swap(values, i, store++);
+            }
+        }
+        swap(values, store, high);
+        return store;
+    }
+
+    private static void swap(long[] values, int i, int j) {
+        long value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+    }
+}
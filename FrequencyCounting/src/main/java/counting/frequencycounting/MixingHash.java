@@ -0,0 +1,58 @@
+package counting.frequencycounting;
+
+/** A fast seeded hash function built from the finaliser of MurmurHash3 (fmix64). It inherits from a base hash function
+ * class, where the parameters a and b act as its seeds.
+ *
+ * This function isn't drawn from a k-wise independent family, so it comes with no theoretical guarantees, but every
+ * bit of its output depends on every bit of its input and it costs a handful of multiplies, shifts and xors. Hash
+ * values are spread across [0, p) for the Mersenne prime p = 2^61 - 1.
+ *
+ */
+
+public class MixingHash extends Hash {
+
+    // The increment of SplitMix64 (2^64 divided by the golden ratio), used to derive parameters from a seed
+    private static final long GOLDEN_RATIO = 0x9E3779B97F4A7C15L;
+
+    // The constructor generates two random seeds between 0 and p
+    public MixingHash() {
+        super(MERSENNE_PRIME);
+    }
+
+    // This constructor derives both parameters from a single seed, so that hash functions are reproducible
+    public MixingHash(long seed) {
+        super(MERSENNE_PRIME, seedParameter(seed + GOLDEN_RATIO), seedParameter(seed + 2 * GOLDEN_RATIO));
+    }
+
+    // This constructor recreates a hash function from known parameters
+    public MixingHash(long a, long b) {
+        super(MERSENNE_PRIME, a, b);
+    }
+
+    private static long seedParameter(long seed) {
+        return (fmix64(seed) >>> 3) % MERSENNE_PRIME;
+    }
+
+    @Override
+    // The hash function mixes the item with the first seed, then xors in the second seed and mixes again
+    public long hashFunction(long x) {
+        long hashValue = hash64(x) >>> 3;
+        // Only one of the 2^61 possible values lies outside [0, p)
+        return hashValue == MERSENNE_PRIME ? 0 : hashValue;
+    }
+
+    // The full 64 bits of the mixed item, for sketches which split the bits into several hash values
+    long hash64(long x) {
+        return fmix64(fmix64(x + super.getA() * GOLDEN_RATIO) ^ super.getB());
+    }
+
+    // The 64-bit finaliser of MurmurHash3
+    static long fmix64(long x) {
+        x ^= x >>> 33;
+        x *= 0xFF51AFD7ED558CCDL;
+        x ^= x >>> 33;
+        x *= 0xC4CEB9FE1A85EC53L;
+        x ^= x >>> 33;
+        return x;
+    }
+}
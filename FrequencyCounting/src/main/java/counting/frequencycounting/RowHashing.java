@@ -0,0 +1,17 @@
+package counting.frequencycounting;
+
+/** The ways a count-min sketch can choose the counter each of its d rows maps an item to.
+ *
+ * INDEPENDENT gives every row its own pairwise independent hash function, as in the original analysis of the sketch.
+ *
+ * DOUBLE_HASHING uses Kirsch and Mitzenmacher's technique: the item is hashed once to 64 bits with a MixingHash, which
+ * is split into two 32-bit hash values h1 and h2, and row i uses column (h1 + i * h2) mod t. This replaces d hash
+ * evaluations, each with a 64-bit % operation, with one hash and d additions. h2 is forced to be odd, so that the rows
+ * of an item never all share the same column.
+ *
+ */
+
+public enum RowHashing {
+    INDEPENDENT,
+    DOUBLE_HASHING
+}
@@ -0,0 +1,148 @@
+package counting.frequencycounting;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+
+/** A count-min sketch that many threads can update without contending with each other. Each writer thread is
+ * assigned one of a number of shards (by its thread id), and each shard is an ordinary count-min sketch with the same
+ * matrix size and hash functions behind its own lock. Because every thread tends to use the same shard, the locks are
+ * almost never contended, even for the hottest items.
+ *
+ * A background thread publishes a snapshot every publish interval. It creates a new snapshot sketch holding the
+ * published counters, then swaps each shard for an empty spare sketch, adds the detached shard's counters to the new
+ * snapshot outside of any lock, and clears the detached shard to keep as the spare for the next swap. Writers are
+ * therefore only ever held up for the swap. Queries read the snapshot without locking, so their answers leave out at
+ * most the updates made since the last publish (plus the time the publish takes). Call close() to stop the background
+ * thread.
+ *
+ * A snapshot is never changed once it has been published, so a query always sees the counters of one complete
+ * snapshot, however long it runs. The cost is one new d x t sketch per publish, which the garbage collector reclaims
+ * once no query is reading it. The shards and the spare are reused.
+ *
+ */
+
+public class ShardedCountMinSketch<T extends CountMinSketch> implements AutoCloseable {
+
+    private final Shard<T>[] shards;
+    private final int shardMask;
+    private final ScheduledExecutorService publisher;
+
+    // Used to create each new snapshot
+    private final T template;
+    private final UnaryOperator<T> shardFactory;
+
+    // The empty sketch swapped in for the next shard. Only changed while holding the lock on this object
+    private T spare;
+    private volatile T snapshot;
+
+    // Creates a sharded count-min sketch original with one shard per available processor
+    public static ShardedCountMinSketch<CountMinSketchOriginal> original(int d, int t, long publishIntervalMillis) {
+        return new ShardedCountMinSketch<>(new CountMinSketchOriginal(d, t), CountMinSketchOriginal::new,
+                Runtime.getRuntime().availableProcessors(), publishIntervalMillis);
+    }
+
+    // Creates a sharded count-mean-min sketch with one shard per available processor
+    public static ShardedCountMinSketch<CountMeanMinSketch> countMeanMin(int d, int t, long publishIntervalMillis) {
+        return new ShardedCountMinSketch<>(new CountMeanMinSketch(d, t), CountMeanMinSketch::new,
+                Runtime.getRuntime().availableProcessors(), publishIntervalMillis);
+    }
+
+    // The shard factory creates an empty sketch with the same parameters as the one it is given (e.g. the sketch's copy
+    // constructor). It creates the shards and the spare here, and a new snapshot on every publish
+    @SuppressWarnings("unchecked")
+    public ShardedCountMinSketch(T template, UnaryOperator<T> shardFactory, int numberOfShards,
+                                 long publishIntervalMillis) {
+        if (numberOfShards < 1) {
+            throw new RuntimeException("At least one shard is required");
+        }
+        if (publishIntervalMillis < 1) {
+            throw new RuntimeException("The publish interval has to be at least 1 millisecond");
+        }
+        int shardCount = Integer.highestOneBit(numberOfShards);
+        if (shardCount < numberOfShards) {
+            shardCount <<= 1;
+        }
+        shards = (Shard<T>[]) new Shard<?>[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard<>(shardFactory.apply(template));
+        }
+        shardMask = shardCount - 1;
+
+        this.template = template;
+        this.shardFactory = shardFactory;
+        spare = shardFactory.apply(template);
+        snapshot = shardFactory.apply(template);
+
+        publisher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "count-min sketch publisher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        publisher.scheduleWithFixedDelay(this::publish, publishIntervalMillis, publishIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    // Algorithm 4.2 (or the update of whichever sketch the shards are), applied to the calling thread's shard
+    public void update(long item, long weight) {
+        Shard<T> shard = shards[(int) Thread.currentThread().getId() & shardMask];
+        synchronized (shard) {
+            shard.sketch.update(item, weight);
+        }
+    }
+
+    // Algorithm 4.3 on the latest snapshot. Queries never write to a sketch, so they run without locking
+    public long query(long item) {
+        return snapshot.query(item);
+    }
+
+    // Publishes a new snapshot holding the published counters plus every shard. This is called by the background
+    // thread, but can also be called directly, e.g. to make every update so far visible to queries
+    public synchronized void publish() {
+        T next = shardFactory.apply(template);
+        next.addCounters(snapshot);
+        for (Shard<T> shard : shards) {
+            T detached;
+            synchronized (shard) {
+                detached = shard.sketch;
+                shard.sketch = spare;
+            }
+            next.addCounters(detached);
+            detached.clear();
+            spare = detached;
+        }
+        snapshot = next;
+    }
+
+    // The latest published snapshot. It can be queried by any number of threads, and is never changed after it has
+    // been published
+    public T getSnapshot() {
+        return snapshot;
+    }
+
+    public int getNumberOfShards() {
+        return shards.length;
+    }
+
+    // Stops the background thread, then publishes any updates made since the last snapshot
+    @Override
+    public void close() {
+        publisher.shutdown();
+        try {
+            publisher.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        publish();
+    }
+
+    private static final class Shard<T> {
+
+        private T sketch;
+
+        private Shard(T sketch) {
+            this.sketch = sketch;
+        }
+    }
+}
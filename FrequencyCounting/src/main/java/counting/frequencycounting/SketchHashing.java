@@ -0,0 +1,165 @@
+package counting.frequencycounting;
+
+/** The hash functions of a d x t counter matrix stored row by row in one array, and the calculation that maps an item
+ * to the position of its counter in each row. t is rounded up to a power of two, so that a hash value is mapped to a
+ * column with a mask instead of a % operation. The columns are chosen either by d independent hash functions or by
+ * double hashing (see RowHashing).
+ *
+ * CountMinSketch and the sketches that keep their counters in other kinds of array all find their counters here. The
+ * hash functions never change once created, so one SketchHashing can be shared by any number of sketches and threads.
+ * It also gives each thread its own scratch space, so that queries (which may run on many threads at once) allocate
+ * nothing and never write to a sketch.
+ *
+ */
+
+final class SketchHashing {
+
+    // Row i of the matrix is stored at positions i * t to i * t + t - 1, and i * t = i << rowShift
+    final int d;
+    final int t;
+    final int rowShift;
+    final int columnMask;
+    final RowHashing rowHashing;
+
+    // The hash functions used by each row with independent hashing, or the single hash function used by double hashing
+    final PairwiseHash[] hashFunctions;
+    final MixingHash doubleHashFunction;
+
+    // Each thread's scratch space, created the first time the thread asks for it
+    private final ThreadLocal<Scratch> scratch;
+
+    // Sets up new hash functions for a d x t matrix. t is rounded up to the next power of two
+    SketchHashing(int d, int t, RowHashing rowHashing) {
+        if (d < 1 || t < 1 || t > 1 << 30) {
+            throw new RuntimeException("d must be at least 1, and t must be between 1 and 2^30");
+        }
+        rowShift = 32 - Integer.numberOfLeadingZeros(t - 1);
+        if ((long) d << rowShift > Integer.MAX_VALUE - 8) {
+            throw new RuntimeException("The count-min sketch matrix is too large to be stored in one array");
+        }
+        this.d = d;
+        this.t = 1 << rowShift;
+        columnMask = this.t - 1;
+        this.rowHashing = rowHashing;
+        if (rowHashing == RowHashing.DOUBLE_HASHING) {
+            hashFunctions = null;
+            doubleHashFunction = new MixingHash();
+        }
+        else {
+            hashFunctions = new PairwiseHash[d];
+            for (int i = 0; i < d; i++) {
+                hashFunctions[i] = new PairwiseHash();
+            }
+            doubleHashFunction = null;
+        }
+        scratch = ThreadLocal.withInitial(() -> new Scratch(d));
+    }
+
+    // The calling thread's scratch space. It is shared by every sketch using this hashing, so it must only be used
+    // within a single update or query, which must not itself update or query another of these sketches
+    Scratch scratch() {
+        return scratch.get();
+    }
+
+    // The number of counters in the matrix
+    int size() {
+        return d * t;
+    }
+
+    // Fills an array of length d with the position in the counter array of the counter each row maps the item to. The
+    // fields are copied into locals so the JIT compiler doesn't reload them after every store into the array
+    int[] counterIndexes(long item, int[] indexes) {
+        int rowShift = this.rowShift;
+        int columnMask = this.columnMask;
+        if (doubleHashFunction != null) {
+            long hashValue = doubleHashFunction.hash64(item);
+            int h1 = (int) hashValue;
+            int h2 = (int) (hashValue >>> 32) | 1;
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = (i << rowShift) | (h1 & columnMask);
+                h1 += h2;
+            }
+        }
+        else {
+            PairwiseHash[] hashFunctions = this.hashFunctions;
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = (i << rowShift) | (int) (hashFunctions[i].hashFunction(item) & columnMask);
+            }
+        }
+        return indexes;
+    }
+
+    // Fills the indexes array as counterIndexes does, and the signs array with each row's sign for the item, taken from
+    // the first hash bit above the ones that choose the column
+    int[] signedCounterIndexes(long item, int[] indexes, long[] signs) {
+        int rowShift = this.rowShift;
+        int columnMask = this.columnMask;
+        if (doubleHashFunction != null) {
+            long hashValue = doubleHashFunction.hash64(item);
+            int h1 = (int) hashValue;
+            int h2 = (int) (hashValue >>> 32) | 1;
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = (i << rowShift) | (h1 & columnMask);
+                signs[i] = 1 - 2 * ((h1 >>> rowShift) & 1);
+                h1 += h2;
+            }
+        }
+        else {
+            PairwiseHash[] hashFunctions = this.hashFunctions;
+            for (int i = 0; i < indexes.length; i++) {
+                long hashValue = hashFunctions[i].hashFunction(item);
+                indexes[i] = (i << rowShift) | (int) (hashValue & columnMask);
+                signs[i] = 1 - 2 * ((hashValue >>> rowShift) & 1);
+            }
+        }
+        return indexes;
+    }
+
+    // Throws unless the two matrices have the same size and map every item to the same counters, which is needed to
+    // merge them
+    void checkMergeable(SketchHashing hashing2) {
+        if (this == hashing2) {
+            return;
+        }
+
+        // Matrix size must be the same to merge two count-min sketches
+        if (this.d != hashing2.d || this.t != hashing2.t) {
+            throw new RuntimeException("To merge count-min sketches, the matrix size has to be the same");
+        }
+
+        // The sketches must also share the same hash functions
+        if (this.rowHashing != hashing2.rowHashing) {
+            throw new RuntimeException("To merge count-min sketches, they must use the same row hashing");
+        }
+
+        if (rowHashing == RowHashing.DOUBLE_HASHING) {
+            if (this.doubleHashFunction.getA() != hashing2.doubleHashFunction.getA() ||
+                    this.doubleHashFunction.getB() != hashing2.doubleHashFunction.getB()) {
+                throw new RuntimeException("To merge count-min sketches, they must share the same hash functions");
+            }
+        }
+        else {
+            for (int i = 0; i < d; i++) {
+                PairwiseHash pairwiseHash1 = this.hashFunctions[i];
+                PairwiseHash pairwiseHash2 = hashing2.hashFunctions[i];
+
+                if (pairwiseHash1.getA() != pairwiseHash2.getA() || pairwiseHash1.getB() != pairwiseHash2.getB() ||
+                pairwiseHash1.getPrime() != pairwiseHash2.getPrime()) {
+                    throw new RuntimeException("To merge count-min sketches, they must share the same hash functions");
+                }
+            }
+        }
+    }
+
+    // Room for an item's counter position and one value in every row
+    static final class Scratch {
+
+        final int[] indexes;
+        final long[] values;
+
+        private Scratch(int d) {
+            indexes = new int[d];
+            values = new long[d];
+        }
+    }
+}
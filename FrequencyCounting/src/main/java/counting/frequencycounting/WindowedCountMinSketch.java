@@ -0,0 +1,119 @@
+package counting.frequencycounting;
+
+/** A count-min sketch over a sliding window of time, which forgets items as they get older than the window instead of
+ * growing forever. The window is divided into a number of equally long buckets, each with its own count-min sketch
+ * original. The sketches are kept in a ring and share the same matrix size and hash functions.
+ *
+ * Updates go to the bucket covering their time. The ring's sketches are all created up front and reused: each position
+ * records the number of the bucket its sketch holds, and when time moves on, the positions of expired buckets are
+ * simply no longer read. A sketch is only cleared, in one O(d * t) pass and without allocating, when the first update
+ * of a new bucket reaches its position. A query adds up the item's estimates from every live bucket. Since each
+ * bucket's estimate is never too small, neither is their sum.
+ *
+ * Because whole buckets expire at once, the window covers between windowMillis - bucketMillis and windowMillis of
+ * history. More buckets give a sharper window, at the cost of more memory and slower queries.
+ *
+ */
+
+public class WindowedCountMinSketch {
+
+    private final CountMinSketchOriginal[] buckets;
+    private final long bucketMillis;
+
+    // The number (time / bucketMillis) of the newest bucket. Bucket number n is stored at buckets[n % buckets.length],
+    // and bucketNumbers holds the number of the bucket each position's sketch last counted
+    private long newestBucket;
+    private final long[] bucketNumbers;
+
+    // Basic constructor, dividing a window of windowMillis into numberOfBuckets buckets
+    public WindowedCountMinSketch(int d, int t, long windowMillis, int numberOfBuckets) {
+        this(new CountMinSketchOriginal(d, t), windowMillis, numberOfBuckets);
+    }
+
+    // This constructor is used when we want each bucket to use the same matrix size and hash functions as an existing
+    // sketch
+    public WindowedCountMinSketch(CountMinSketchOriginal cms, long windowMillis, int numberOfBuckets) {
+        if (numberOfBuckets < 1 || windowMillis < numberOfBuckets) {
+            throw new RuntimeException("There must be at least one bucket, and each bucket must last at least 1ms");
+        }
+        buckets = new CountMinSketchOriginal[numberOfBuckets];
+        bucketNumbers = new long[numberOfBuckets];
+        for (int i = 0; i < numberOfBuckets; i++) {
+            buckets[i] = new CountMinSketchOriginal(cms);
+            bucketNumbers[i] = i;
+        }
+        bucketMillis = windowMillis / numberOfBuckets;
+        newestBucket = 0;
+    }
+
+    // Adds the item to the bucket covering the current time
+    public void update(long item, long weight) {
+        update(item, weight, System.currentTimeMillis());
+    }
+
+    // Adds the item to the bucket covering timeMillis. Updates older than the window are ignored
+    public void update(long item, long weight, long timeMillis) {
+        long bucket = advance(timeMillis);
+        if (!isLive(bucket)) {
+            return;
+        }
+        int position = bucketPosition(bucket);
+        if (bucketNumbers[position] != bucket) {
+            buckets[position].clear();
+            bucketNumbers[position] = bucket;
+        }
+        buckets[position].update(item, weight);
+    }
+
+    // Estimates the item's weight over the window ending at the current time
+    public long query(long item) {
+        return query(item, System.currentTimeMillis());
+    }
+
+    // Estimates the item's weight over the window ending at timeMillis, or at the newest update if that is later
+    public long query(long item, long timeMillis) {
+        advance(timeMillis);
+        long sum = 0;
+        for (int position = 0; position < buckets.length; position++) {
+            if (isLive(bucketNumbers[position])) {
+                sum += buckets[position].query(item);
+            }
+        }
+        return sum;
+    }
+
+    public long getBucketMillis() {
+        return bucketMillis;
+    }
+
+    public int getNumberOfBuckets() {
+        return buckets.length;
+    }
+
+    public long getBytesUsed() {
+        long bytesUsed = 0;
+        for (CountMinSketchOriginal bucket : buckets) {
+            bytesUsed += bucket.getBytesUsed();
+        }
+        return bytesUsed;
+    }
+
+    // Moves the newest bucket forward to the bucket covering timeMillis. Buckets that fall out of the window are left
+    // as they are until their position is reused. Returns the number of the bucket covering timeMillis
+    private long advance(long timeMillis) {
+        long bucket = Math.floorDiv(timeMillis, bucketMillis);
+        if (bucket > newestBucket) {
+            newestBucket = bucket;
+        }
+        return bucket;
+    }
+
+    // Whether a bucket lies within the window ending at the newest bucket
+    private boolean isLive(long bucket) {
+        return bucket <= newestBucket && bucket > newestBucket - buckets.length;
+    }
+
+    private int bucketPosition(long bucket) {
+        return (int) Math.floorMod(bucket, (long) buckets.length);
+    }
+}
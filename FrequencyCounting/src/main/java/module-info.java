@@ -1,6 +1,7 @@
 module counting.frequencycounting {
     requires javafx.controls;
     requires javafx.fxml;
+    requires java.management;
 
 
     opens counting.frequencycounting to javafx.fxml;